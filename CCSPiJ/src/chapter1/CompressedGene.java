@@ -16,83 +16,535 @@
 
 package chapter1;
 
-import java.util.BitSet;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.LongConsumer;
 
+// A gene packed two bits per nucleotide into longs, 32 nucleotides per word;
+// nucleotide i sits in word i / 32 at bits 2 * (i % 32) and 2 * (i % 32) + 1
+// A is 00, C is 01, G is 10 and T is 11, so a complement is just a bitwise not
 public class CompressedGene {
-	private BitSet bitSet;
-	private int length;
+	// the file format: MAGIC, VERSION, the number of nucleotides, then the words, all little-endian
+	private static final int MAGIC = 0x4E454743; // "CGEN" on disk
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 16;
+	private static final int SEGMENT_SHIFT = 27; // 1 GB of words per mapping
+	private static final int SEGMENT_WORDS = 1 << SEGMENT_SHIFT;
+	private static final long PAIR_LOW_BITS = 0x5555_5555_5555_5555L;
+	// code of each character, or 4 for anything that is not a nucleotide
+	private static final byte[] ENCODE = new byte[128];
+	// the 4 characters spelled by each byte of a word
+	private static final byte[] DECODE = new byte[256 * 4];
+	static {
+		Arrays.fill(ENCODE, (byte) 4);
+		String nucleotides = "ACGT";
+		for (int code = 0; code < 4; code++) {
+			ENCODE[nucleotides.charAt(code)] = (byte) code;
+			ENCODE[Character.toLowerCase(nucleotides.charAt(code))] = (byte) code;
+		}
+		for (int b = 0; b < 256; b++) {
+			for (int j = 0; j < 4; j++) {
+				DECODE[4 * b + j] = (byte) nucleotides.charAt((b >>> (2 * j)) & 3);
+			}
+		}
+	}
+
+	private long[] words; // null for a view of a file
+	private LongBuffer[] segments; // the mapped words of a file, SEGMENT_WORDS to a buffer
+	private long length;
 
 	public CompressedGene(String gene) {
 		compress(gene);
 	}
 
+	// Compresses chunks of whole words in parallel on *pool*
+	public CompressedGene(String gene, ForkJoinPool pool) {
+		length = gene.length();
+		words = new long[wordCount(length)];
+		pool.invoke(new WordTask((from, to) -> encode(gene, from, to), 0, words.length));
+	}
+
+	// Takes ownership of *words*, whose bits past *length* nucleotides must be zero
+	CompressedGene(long[] words, long length) {
+		this.words = words;
+		this.length = length;
+	}
+
 	private void compress(String gene) {
 		length = gene.length();
 		// reserve enough capacity for all of the bits
-		bitSet = new BitSet(length * 2);
-		// convert to upper case for consistency
-		final String upperGene = gene.toUpperCase();
-		// convert String to bit representation
-		for (int i = 0; i < length; i++) {
-			final int firstLocation = 2 * i;
-			final int secondLocation = 2 * i + 1;
-			switch (upperGene.charAt(i)) {
-			case 'A': // 00 are next two bits
-				bitSet.set(firstLocation, false);
-				bitSet.set(secondLocation, false);
-				break;
-			case 'C': // 01 are next two bits
-				bitSet.set(firstLocation, false);
-				bitSet.set(secondLocation, true);
-				break;
-			case 'G': // 10 are next two bits
-				bitSet.set(firstLocation, true);
-				bitSet.set(secondLocation, false);
-				break;
-			case 'T': // 11 are next two bits
-				bitSet.set(firstLocation, true);
-				bitSet.set(secondLocation, true);
-				break;
-			default:
+		words = new long[wordCount(length)];
+		encode(gene, 0, words.length);
+	}
+
+	// convert String to bit representation, a word at a time, for words [fromWord, toWord)
+	private void encode(String gene, int fromWord, int toWord) {
+		for (int w = fromWord; w < toWord; w++) {
+			int start = w << 5;
+			int end = (int) Math.min(start + 32L, length);
+			long word = 0;
+			int invalid = 0; // collects the 4 bit of any character that isn't ACGT
+			for (int i = start; i < end; i++) {
+				char c = gene.charAt(i);
+				int code = c < 128 ? ENCODE[c] : 4;
+				invalid |= code;
+				word |= (long) (code & 3) << ((i - start) << 1);
+			}
+			if ((invalid & 4) != 0) {
 				throw new IllegalArgumentException("The provided gene String contains characters other than ACGT");
 			}
+			words[w] = word;
 		}
 	}
 
+	private static int wordCount(long length) {
+		long count = (length + 31) >>> 5;
+		if (count > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Too long for one CompressedGene: " + length);
+		}
+		return (int) count;
+	}
+
+	public long length() {
+		return length;
+	}
+
 	public String decompress() {
-		if (bitSet == null) {
-			return "";
-		}
-		// create a mutable place for characters with right capacity
-		StringBuilder builder = new StringBuilder(length);
-		for (int i = 0; i < (length * 2); i += 2) {
-			final int firstBit = (bitSet.get(i) ? 1 : 0);
-			final int secondBit = (bitSet.get(i + 1) ? 1 : 0);
-			final int lastBits = firstBit << 1 | secondBit;
-			switch (lastBits) {
-			case 0b00: // 00 is 'A'
-				builder.append('A');
-				break;
-			case 0b01: // 01 is 'C'
-				builder.append('C');
-				break;
-			case 0b10: // 10 is 'G'
-				builder.append('G');
-				break;
-			case 0b11: // 11 is 'T'
-				builder.append('T');
-				break;
-			}
-		}
-		return builder.toString();
-	}
-
-	public static void main(String[] args) {
+		// one byte per nucleotide, which a Latin-1 String keeps without widening
+		byte[] out = new byte[stringLength()];
+		decode(out, 0, 0, wordCount());
+		return new String(out, StandardCharsets.ISO_8859_1);
+	}
+
+	// Same as above, with the words split among the threads of *pool*
+	public String decompress(ForkJoinPool pool) {
+		byte[] out = new byte[stringLength()];
+		decompressInto(out, 0, pool);
+		return new String(out, StandardCharsets.ISO_8859_1);
+	}
+
+	// Write all of the nucleotides as ASCII into *out* starting at *offset*, in parallel
+	public void decompressInto(byte[] out, int offset, ForkJoinPool pool) {
+		checkRoom(out.length, offset);
+		pool.invoke(new WordTask((from, to) -> decode(out, offset, from, to), 0, wordCount()));
+	}
+
+	public void decompressInto(char[] out, int offset, ForkJoinPool pool) {
+		checkRoom(out.length, offset);
+		pool.invoke(new WordTask((from, to) -> decode(out, offset, from, to), 0, wordCount()));
+	}
+
+	private int stringLength() {
+		if (length > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("Too long for a String: " + length);
+		}
+		return (int) length;
+	}
+
+	private void checkRoom(int capacity, int offset) {
+		if (offset < 0 || offset > capacity || capacity - offset < length) {
+			throw new IndexOutOfBoundsException(length + " nucleotides at " + offset + " of " + capacity);
+		}
+	}
+
+	// decompress words [fromWord, toWord) to their places in *out*
+	private void decode(byte[] out, int offset, int fromWord, int toWord) {
+		for (int w = fromWord; w < toWord; w++) {
+			spell(word(w), out, offset + (w << 5), (int) Math.min(32, length - ((long) w << 5)));
+		}
+	}
+
+	private void decode(char[] out, int offset, int fromWord, int toWord) {
+		for (int w = fromWord; w < toWord; w++) {
+			spell(word(w), out, offset + (w << 5), (int) Math.min(32, length - ((long) w << 5)));
+		}
+	}
+
+	// Write the first *count* (at most 32) nucleotides packed in *word* to out[at...]
+	private static void spell(long word, byte[] out, int at, int count) {
+		if (count == 32) {
+			for (int shift = 0; shift < 64; shift += 8, at += 4) {
+				// 4 nucleotides per table lookup
+				System.arraycopy(DECODE, (int) ((word >>> shift) & 0xFF) << 2, out, at, 4);
+			}
+		} else {
+			for (int j = 0; j < count; j++) {
+				out[at + j] = DECODE[(int) ((word >>> (j << 1)) & 3) << 2];
+			}
+		}
+	}
+
+	private static void spell(long word, char[] out, int at, int count) {
+		for (int j = 0; j < count; j += 4) {
+			int entry = (int) ((word >>> (j << 1)) & 0xFF) << 2;
+			for (int k = 0; k < 4 && j + k < count; k++) {
+				out[at + j + k] = (char) DECODE[entry + k];
+			}
+		}
+	}
+
+	public char charAt(long index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException(index + " of " + length);
+		}
+		return (char) DECODE[code(index) << 2];
+	}
+
+	// Only nucleotides [from, to), decoded a shifted word at a time
+	public String decompress(long from, long to) {
+		checkRange(from, to);
+		if (to - from > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("Too long for a String: " + (to - from));
+		}
+		byte[] out = new byte[(int) (to - from)];
+		for (int at = 0; at < out.length; at += 32) {
+			spell(wordAt(from + at), out, at, Math.min(32, out.length - at));
+		}
+		return new String(out, StandardCharsets.ISO_8859_1);
+	}
+
+	// A CharSequence over nucleotides [from, to) that decodes on demand
+	public CharSequence asCharSequence(long from, long to) {
+		checkRange(from, to);
+		if (to - from > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too long for a CharSequence: " + (to - from));
+		}
+		return new View(from, (int) (to - from));
+	}
+
+	// A Reader that streams nucleotides [from, to), a word at a time
+	public Reader reader(long from, long to) {
+		checkRange(from, to);
+		return new GeneReader(from, to);
+	}
+
+	public Reader reader() {
+		return reader(0, length);
+	}
+
+	private void checkRange(long from, long to) {
+		if (from < 0 || to > length || from > to) {
+			throw new IndexOutOfBoundsException("[" + from + ", " + to + ") of " + length);
+		}
+	}
+
+	private final class View implements CharSequence {
+		private final long start;
+		private final int length;
+
+		View(long start, int length) {
+			this.start = start;
+			this.length = length;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= length) {
+				throw new IndexOutOfBoundsException(index + " of " + length);
+			}
+			return CompressedGene.this.charAt(start + index);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			if (from < 0 || to > length || from > to) {
+				throw new IndexOutOfBoundsException("[" + from + ", " + to + ") of " + length);
+			}
+			return new View(start + from, to - from);
+		}
+
+		@Override
+		public String toString() {
+			return decompress(start, start + length);
+		}
+	}
+
+	private final class GeneReader extends Reader {
+		private long position;
+		private final long end;
+
+		GeneReader(long from, long to) {
+			position = from;
+			end = to;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int count) {
+			if (offset < 0 || count < 0 || count > buffer.length - offset) {
+				throw new IndexOutOfBoundsException();
+			}
+			if (count == 0) {
+				return 0;
+			}
+			if (position >= end) {
+				return -1;
+			}
+			int total = (int) Math.min(count, end - position);
+			for (int done = 0; done < total; done += 32) {
+				spell(wordAt(position + done), buffer, offset + done, Math.min(32, total - done));
+			}
+			position += total;
+			return total;
+		}
+
+		@Override
+		public long skip(long n) {
+			long skipped = Math.max(0, Math.min(n, end - position));
+			position += skipped;
+			return skipped;
+		}
+
+		@Override
+		public void close() {
+			// nothing to release; the words belong to the CompressedGene
+		}
+	}
+
+	// Runs *range* over [from, to), split in halves until the pieces are small enough
+	// The pieces are whole words, so no two threads ever write the same word or slot
+	private static final class WordTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int THRESHOLD = 1 << 14; // 512K nucleotides
+		private final WordRange range;
+		private final int from, to;
+
+		WordTask(WordRange range, int from, int to) {
+			this.range = range;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= THRESHOLD) {
+				range.run(from, to);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new WordTask(range, from, middle), new WordTask(range, middle, to));
+			}
+		}
+	}
+
+	private interface WordRange {
+		void run(int fromWord, int toWord);
+	}
+
+	// Write the header and packed words to *path* through a FileChannel
+	public void write(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putLong(length);
+			for (int w = 0; w < wordCount(); w++) {
+				if (buffer.remaining() < Long.BYTES) {
+					drain(buffer, channel);
+				}
+				buffer.putLong(word(w));
+			}
+			drain(buffer, channel);
+		}
+	}
+
+	private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	// A read-only CompressedGene over a file written by write(), mapped rather than read,
+	// so it opens instantly whatever its size and decodes nucleotides only when asked
+	public static CompressedGene map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining()) {
+				if (channel.read(header) < 0) {
+					break;
+				}
+			}
+			header.flip();
+			if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException(path + " is not a CompressedGene file");
+			}
+			long length = header.getLong();
+			if (length < 0 || channel.size() != HEADER_BYTES + 8L * wordCount(length)) {
+				throw new IOException(path + " is truncated or corrupt");
+			}
+			int wordCount = wordCount(length);
+			LongBuffer[] segments = new LongBuffer[(wordCount + SEGMENT_WORDS - 1) >>> SEGMENT_SHIFT];
+			for (int i = 0; i < segments.length; i++) {
+				long first = (long) i << SEGMENT_SHIFT;
+				long count = Math.min(SEGMENT_WORDS, wordCount - first);
+				// a mapping stays valid after its channel is closed
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + 8 * first, 8 * count)
+						.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+			}
+			CompressedGene gene = new CompressedGene(null, length);
+			gene.segments = segments;
+			return gene;
+		}
+	}
+
+	private int wordCount() {
+		return (int) ((length + 31) >>> 5);
+	}
+
+	private long word(int w) {
+		return words != null ? words[w] : segments[w >>> SEGMENT_SHIFT].get(w & (SEGMENT_WORDS - 1));
+	}
+
+	// The 2-bit code of nucleotide *index*
+	private int code(long index) {
+		return (int) (word((int) (index >>> 5)) >>> ((index & 31) << 1)) & 3;
+	}
+
+	// The 64 bits starting at nucleotide *index*, which must be a valid position
+	// Bits beyond the last word read as zero
+	private long wordAt(long index) {
+		int w = (int) (index >>> 5);
+		int shift = (int) (index & 31) << 1;
+		long low = word(w) >>> shift;
+		if (shift == 0 || w + 1 >= wordCount()) {
+			return low;
+		}
+		return low | word(w + 1) << (64 - shift);
+	}
+
+	// Nucleotides [from, to) as a new CompressedGene, shifted a word at a time
+	public CompressedGene substring(long from, long to) {
+		checkRange(from, to);
+		long subLength = to - from;
+		long[] sub = new long[wordCount(subLength)];
+		for (int w = 0; w < sub.length; w++) {
+			sub[w] = wordAt(from + ((long) w << 5));
+		}
+		clearTail(sub, subLength);
+		return new CompressedGene(sub, subLength);
+	}
+
+	// The complementary strand read in the opposite direction
+	public CompressedGene reverseComplement() {
+		int count = wordCount();
+		long[] reversed = new long[count];
+		for (int w = 0; w < count; w++) {
+			// reverse the order of the 32 pairs within a word: reverse all bits, then swap each pair back
+			long bits = Long.reverse(~word(w));
+			reversed[count - 1 - w] = (bits >>> 1) & PAIR_LOW_BITS | (bits & PAIR_LOW_BITS) << 1;
+		}
+		// the padding of the last word is now at the front
+		long padding = ((long) count << 5) - length;
+		CompressedGene padded = new CompressedGene(reversed, (long) count << 5);
+		return padded.substring(padding, padded.length);
+	}
+
+	// The k nucleotides starting at *index* as a 2k-bit number, first nucleotide lowest
+	// For k <= 32 this is a perfect hash of the k-mer
+	public long kmer(long index, int k) {
+		if (k < 1 || k > 32 || index < 0 || index + k > length) {
+			throw new IndexOutOfBoundsException(k + "-mer at " + index + " of " + length);
+		}
+		return wordAt(index) & kmerMask(k);
+	}
+
+	// Passes kmer(i, k) for every i in order, rolling one nucleotide at a time
+	public void forEachKmer(int k, LongConsumer action) {
+		if (k < 1 || k > 32) {
+			throw new IllegalArgumentException("k must be between 1 and 32: " + k);
+		}
+		if (length < k) {
+			return;
+		}
+		long mask = kmerMask(k);
+		int top = 2 * (k - 1);
+		long kmer = wordAt(0) & mask;
+		action.accept(kmer);
+		for (long i = k; i < length; i++) {
+			kmer = kmer >>> 2 | (long) code(i) << top;
+			action.accept(kmer);
+		}
+	}
+
+	private static long kmerMask(int k) {
+		return k == 32 ? -1L : (1L << (2 * k)) - 1;
+	}
+
+	// zero the bits past *length* nucleotides, which the other methods rely on
+	private static void clearTail(long[] words, long length) {
+		int used = (int) (length & 31);
+		if (used != 0) {
+			words[words.length - 1] &= (1L << (2 * used)) - 1;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
 		final String original = "TAGGGATTAACCGTTATATATATATAGCCATGGATCGATTATATAGGGATTAACCGTTATATATATATAGCCATGGATCGATTATA";
 		CompressedGene compressed = new CompressedGene(original);
 		final String decompressed = compressed.decompress();
 		System.out.println(decompressed);
 		System.out.println("original is the same as decompressed: " + original.equalsIgnoreCase(decompressed));
+		System.out.println("substring(10, 30): " + compressed.substring(10, 30).decompress());
+		System.out.println("reverse complement: " + compressed.reverseComplement().decompress());
+		System.out.println("decompress(10, 30): " + compressed.decompress(10, 30) + ", charAt(10): "
+				+ compressed.charAt(10));
+		System.out.printf("kmer(0, 4) of TAGG: %s%n", Long.toBinaryString(compressed.kmer(0, 4)));
+
+		Path file = Files.createTempFile("gene", ".cgen");
+		try {
+			compressed.write(file);
+			CompressedGene mapped = CompressedGene.map(file);
+			System.out.printf("%d bytes on disk, mapped back the same: %b%n", Files.size(file),
+					mapped.decompress().equals(decompressed));
+		} finally {
+			Files.delete(file);
+		}
+
+		// 100 million random nucleotides
+		Random random = new Random(42);
+		byte[] bases = new byte[100_000_000];
+		for (int i = 0; i < bases.length; i++) {
+			bases[i] = (byte) "ACGT".charAt(random.nextInt(4));
+		}
+		String big = new String(bases, StandardCharsets.ISO_8859_1);
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		byte[] out = new byte[big.length()];
+		for (int round = 0; round < 3; round++) { // the first rounds warm up the JIT
+			long startTime = System.nanoTime();
+			CompressedGene bigGene = new CompressedGene(big);
+			long compressTime = System.nanoTime() - startTime;
+			startTime = System.nanoTime();
+			String back = bigGene.decompress();
+			long decompressTime = System.nanoTime() - startTime;
+			startTime = System.nanoTime();
+			CompressedGene parallelGene = new CompressedGene(big, pool);
+			long parallelCompressTime = System.nanoTime() - startTime;
+			startTime = System.nanoTime();
+			parallelGene.decompressInto(out, 0, pool);
+			long parallelDecompressTime = System.nanoTime() - startTime;
+			System.out.printf("%,d nucleotides: compressed at %.0f MB/s, decompressed at %.0f MB/s, same: %b%n",
+					big.length(), big.length() * 1e3 / compressTime, big.length() * 1e3 / decompressTime,
+					big.equals(back));
+			System.out.printf("  in parallel on %d threads: compressed at %.0f MB/s, decompressed at %.0f MB/s, same: %b%n",
+					pool.getParallelism(), big.length() * 1e3 / parallelCompressTime,
+					big.length() * 1e3 / parallelDecompressTime, Arrays.equals(bases, out));
+		}
 	}
 
 }
@@ -16,28 +16,28 @@
 
 package chapter1;
 
-import java.util.HashMap;
-import java.util.Map;
-
 @SuppressWarnings("boxing")
 public class Fib3 {
 
-	// Map.of() was introduced in Java 9 but returns
-	// an immutable Map
-	// This creates a map with 0->0 and 1->1
-	// Which represent our base cases
-	static Map<Integer, Integer> memo = new HashMap<>(Map.of(0, 0, 1, 1));
+	// The base cases 0->0 and 1->1 are part of the function;
+	// the memoizer remembers every other result it computes
+	// Unlike a plain HashMap it is safe to share between threads
+	// and keeps at most 1,000 results instead of growing forever
+	static Memoizer.OfInt<Integer> memo = new Memoizer.OfInt<>((self, n) -> {
+		if (n < 2) {
+			return n;
+		}
+		// memoization step
+		return self.apply(n - 1) + self.apply(n - 2);
+	}, 1_000);
 
 	private static int fib3(int n) {
-		if (!memo.containsKey(n)) {
-			// memoization step
-			memo.put(n, fib3(n - 1) + fib3(n - 2));
-		}
-		return memo.get(n);
+		return memo.apply(n);
 	}
 
 	public static void main(String[] args) {
 		System.out.println(fib3(5));
 		System.out.println(fib3(40));
+		System.out.println(memo);
 	}
 }
@@ -16,11 +16,20 @@
 
 package chapter1;
 
+import java.math.BigInteger;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class Fib5 {
 	private int last = 0, next = 1; // fib(0), fib(1)
 
+	// Sequential only: every element depends on the mutable fields, so running it
+	// with .parallel() hands out numbers in a scrambled and racy order
 	public IntStream stream() {
 		return IntStream.generate(() -> {
 			int oldLast = last;
@@ -30,8 +39,166 @@ public class Fib5 {
 		});
 	}
 
+	// fib(from) ... fib(to - 1), splittable for parallel streams; fib(92) is the largest that fits a long
+	public static LongStream longs(long from, long to) {
+		if (from < 0 || to > 93 || from > to) {
+			throw new IllegalArgumentException("Need 0 <= from <= to <= 93: " + from + ", " + to);
+		}
+		return StreamSupport.longStream(new LongFibSpliterator(from, to), false);
+	}
+
+	// fib(from) ... fib(to - 1) of any size, splittable for parallel streams
+	public static Stream<BigInteger> bigIntegers(long from, long to) {
+		if (from < 0 || from > to) {
+			throw new IllegalArgumentException("Need 0 <= from <= to: " + from + ", " + to);
+		}
+		return StreamSupport.stream(new BigFibSpliterator(from, to), false);
+	}
+
+	private static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED
+			| Spliterator.IMMUTABLE | Spliterator.NONNULL;
+	// no point jumping ahead for fewer elements; a long stream has at most 93 of them
+	private static final long MIN_SPLIT = 64;
+	private static final long MIN_LONG_SPLIT = 8;
+
+	// Walks the sequence with the same two-number state as stream(), but owns that
+	// state; splitting hands the first half to a new spliterator and jumps this one
+	// straight to the middle with fast doubling (see Fib6), so no half waits on the other
+	private static final class BigFibSpliterator implements Spliterator<BigInteger> {
+		private long index;
+		private final long end;
+		private BigInteger last, next; // fib(index), fib(index + 1)
+
+		BigFibSpliterator(long from, long to) {
+			this(from, to, Fib6.doubling(from, 0, BigInteger.ZERO, BigInteger.ONE));
+		}
+
+		private BigFibSpliterator(long from, long to, BigInteger[] state) {
+			index = from;
+			end = to;
+			last = state[0];
+			next = state[1];
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super BigInteger> action) {
+			if (index >= end) {
+				return false;
+			}
+			BigInteger oldLast = last;
+			last = next;
+			next = oldLast.add(next);
+			index++;
+			action.accept(oldLast);
+			return true;
+		}
+
+		@Override
+		public Spliterator<BigInteger> trySplit() {
+			if (end - index < 2 * MIN_SPLIT) {
+				return null;
+			}
+			long middle = index + (end - index) / 2;
+			BigFibSpliterator prefix = new BigFibSpliterator(index, middle, new BigInteger[] { last, next });
+			BigInteger[] state = Fib6.doubling(middle, 0, BigInteger.ZERO, BigInteger.ONE);
+			index = middle;
+			last = state[0];
+			next = state[1];
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			return end - index;
+		}
+
+		@Override
+		public int characteristics() {
+			return CHARACTERISTICS;
+		}
+	}
+
+	private static final class LongFibSpliterator implements Spliterator.OfLong {
+		private long index;
+		private final long end;
+		private long last, next; // fib(index), fib(index + 1), the latter may wrap past fib(92)
+
+		LongFibSpliterator(long from, long to) {
+			index = from;
+			end = to;
+			jumpTo(from);
+		}
+
+		private LongFibSpliterator(long from, long to, long last, long next) {
+			index = from;
+			end = to;
+			this.last = last;
+			this.next = next;
+		}
+
+		// fast doubling in long arithmetic, whose wrap-around never reaches the numbers handed out
+		private void jumpTo(long n) {
+			long a = 0, b = 1;
+			for (int bit = 63 - Long.numberOfLeadingZeros(n); bit >= 0; bit--) {
+				long c = a * (2 * b - a);
+				long d = a * a + b * b;
+				if ((n >>> bit & 1) == 0) {
+					a = c;
+					b = d;
+				} else {
+					a = d;
+					b = c + d;
+				}
+			}
+			last = a;
+			next = b;
+		}
+
+		@Override
+		public boolean tryAdvance(LongConsumer action) {
+			if (index >= end) {
+				return false;
+			}
+			long oldLast = last;
+			last = next;
+			next = oldLast + next;
+			index++;
+			action.accept(oldLast);
+			return true;
+		}
+
+		@Override
+		public Spliterator.OfLong trySplit() {
+			if (end - index < 2 * MIN_LONG_SPLIT) {
+				return null;
+			}
+			long middle = index + (end - index) / 2;
+			LongFibSpliterator prefix = new LongFibSpliterator(index, middle, last, next);
+			index = middle;
+			jumpTo(middle);
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			return end - index;
+		}
+
+		@Override
+		public int characteristics() {
+			return CHARACTERISTICS;
+		}
+	}
+
 	public static void main(String[] args) {
 		Fib5 fib5 = new Fib5();
 		fib5.stream().limit(41).forEachOrdered(System.out::println);
+
+		System.out.println("sum of fib(0) to fib(90) in parallel: " + longs(0, 91).parallel().sum()
+				+ ", which should be fib(92) - 1 = " + (longs(92, 93).sum() - 1));
+		long startTime = System.nanoTime();
+		long even = bigIntegers(0, 100_000).parallel().filter(f -> !f.testBit(0)).count();
+		System.out.printf("%d of the first 100,000 Fibonacci numbers are even (every third), counted in parallel in %d ms%n",
+				even, (System.nanoTime() - startTime) / 1_000_000);
 	}
 }
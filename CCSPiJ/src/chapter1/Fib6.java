@@ -0,0 +1,132 @@
+// Fib6.java
+// From Classic Computer Science Problems in Java Chapter 1
+// Copyright 2020 David Kopec
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package chapter1;
+
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Arbitrary-precision Fibonacci numbers by fast doubling, O(log n) big multiplications:
+// fib(2k) = fib(k) * (2 * fib(k + 1) - fib(k))
+// fib(2k + 1) = fib(k)^2 + fib(k + 1)^2
+// BigInteger switches to Karatsuba and Toom-Cook multiplication for big operands,
+// and two of the three products are squares, which it computes faster still
+// An instance also remembers the last results as checkpoints, so that a query close
+// above a checkpoint only needs a few multiplications by much smaller numbers
+public class Fib6 {
+	private final int capacity;
+	// index -> { fib(index), fib(index + 1) }, least recently used first
+	private final LinkedHashMap<Long, BigInteger[]> checkpoints;
+	// the same checkpoints, by index, to find the closest one below a query
+	private final TreeMap<Long, BigInteger[]> byIndex = new TreeMap<>();
+
+	public Fib6(int capacity) {
+		this.capacity = capacity;
+		checkpoints = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	public static BigInteger fib6(long n) {
+		if (n < 0) {
+			throw new IllegalArgumentException("n must not be negative: " + n);
+		}
+		return doubling(n, 0, BigInteger.ZERO, BigInteger.ONE)[0];
+	}
+
+	public synchronized BigInteger fib(long n) {
+		return pair(n)[0];
+	}
+
+	// { fib(n), fib(n + 1) }, from a checkpoint when one helps
+	private BigInteger[] pair(long n) {
+		if (n < 0) {
+			throw new IllegalArgumentException("n must not be negative: " + n);
+		}
+		BigInteger[] result = checkpoints.get(n);
+		if (result != null) {
+			return result;
+		}
+		Map.Entry<Long, BigInteger[]> below = byIndex.floorEntry(n);
+		long m = below == null ? 0 : below.getKey();
+		long d = n - m;
+		if (below != null && d <= m / 8) {
+			// fib(m + d) = fib(m) * fib(d - 1) + fib(m + 1) * fib(d), with fib(d) far smaller
+			BigInteger[] step = doubling(d, 0, BigInteger.ZERO, BigInteger.ONE);
+			BigInteger fm = below.getValue()[0];
+			BigInteger fm1 = below.getValue()[1];
+			BigInteger fdMinus1 = step[1].subtract(step[0]);
+			result = new BigInteger[] {
+					fm.multiply(fdMinus1).add(fm1.multiply(step[0])),
+					fm.multiply(step[0]).add(fm1.multiply(step[1])) };
+		} else {
+			// continue the doubling from the longest cached prefix of n's bits, if any
+			int shift = 1;
+			while (shift < 64 && (n >>> shift) != 0 && !checkpoints.containsKey(n >>> shift)) {
+				shift++;
+			}
+			BigInteger[] start = shift < 64 ? checkpoints.get(n >>> shift) : null;
+			result = start == null ? doubling(n, 0, BigInteger.ZERO, BigInteger.ONE)
+					: doubling(n, shift, start[0], start[1]);
+		}
+		remember(n, result);
+		return result;
+	}
+
+	// Given *a* = fib(n >>> shift) and *b* = fib((n >>> shift) + 1), walk down the
+	// remaining bits of n; shift 0 means start from the top with fib(0) and fib(1)
+	static BigInteger[] doubling(long n, int shift, BigInteger a, BigInteger b) {
+		int bit = shift == 0 ? 63 - Long.numberOfLeadingZeros(n) : shift - 1;
+		for (; bit >= 0; bit--) {
+			BigInteger c = a.multiply(b.shiftLeft(1).subtract(a)); // fib(2k)
+			BigInteger d = a.multiply(a).add(b.multiply(b)); // fib(2k + 1)
+			if ((n >>> bit & 1) == 0) {
+				a = c;
+				b = d;
+			} else {
+				a = d;
+				b = c.add(d);
+			}
+		}
+		return new BigInteger[] { a, b };
+	}
+
+	private void remember(long n, BigInteger[] pair) {
+		checkpoints.put(n, pair);
+		byIndex.put(n, pair);
+		if (checkpoints.size() > capacity) {
+			Long eldest = checkpoints.keySet().iterator().next();
+			checkpoints.remove(eldest);
+			byIndex.remove(eldest);
+		}
+	}
+
+	public static void main(String[] args) {
+		System.out.println(fib6(5));
+		System.out.println(fib6(40));
+		System.out.println(fib6(100)); // far past what an int can hold
+
+		Fib6 service = new Fib6(16);
+		long startTime = System.nanoTime();
+		BigInteger big = service.fib(10_000_000);
+		System.out.printf("fib(10^7) has %,d bits, computed in %d ms%n", big.bitLength(),
+				(System.nanoTime() - startTime) / 1_000_000);
+		startTime = System.nanoTime();
+		BigInteger near = service.fib(10_000_500);
+		System.out.printf("fib(10^7 + 500) from the checkpoint in %d ms, checks out: %b%n",
+				(System.nanoTime() - startTime) / 1_000_000, near.equals(fib6(10_000_500)));
+	}
+}
@@ -0,0 +1,30 @@
+// FileKeyPair.java
+// From Classic Computer Science Problems in Java Chapter 1
+// Copyright 2020 David Kopec
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package chapter1;
+
+import java.nio.file.Path;
+
+// Mirrors KeyPair with Path fields instead of byte[]: the pad file and the encrypted file
+public final class FileKeyPair {
+	public final Path key1;
+	public final Path key2;
+
+	FileKeyPair(Path key1, Path key2) {
+		this.key1 = key1;
+		this.key2 = key2;
+	}
+}
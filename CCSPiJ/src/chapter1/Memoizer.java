@@ -0,0 +1,412 @@
+// Fib5.java
+// From Classic Computer Science Problems in Java Chapter 1
+// Copyright 2020 David Kopec
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package chapter1;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.LongFunction;
+import java.util.function.ToLongBiFunction;
+
+// Memoization for recursive functions that can be shared between threads
+// The function is handed the memoized version of itself to recurse through, e.g.
+// new Memoizer<Integer, Integer>((self, n) -> n < 2 ? n : self.apply(n - 1) + self.apply(n - 2), 1000)
+// Results are computed with no lock held, so recursion never trips over the map the
+// way ConcurrentHashMap.computeIfAbsent() does ("Recursive update"); two threads
+// that miss on the same key at once may both compute it, and the first result wins
+// Once the total weight (by default, the number of results) passes the maximum,
+// results are evicted in CLOCK order: oldest first, except that one used since the
+// last sweep gets a second chance
+public final class Memoizer<K, V> implements Function<K, V> {
+
+	public interface LongBody<V> {
+		V apply(LongFunction<V> self, long key);
+	}
+
+	public interface IntBody<V> {
+		V apply(IntFunction<V> self, int key);
+	}
+
+	private static final class Entry<V> {
+		final V value;
+		final long weight;
+		volatile boolean referenced;
+
+		Entry(V value, long weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	private final BiFunction<Function<K, V>, K, V> function;
+	private final long maxWeight;
+	private final ToLongBiFunction<? super K, ? super V> weigher;
+	private final ConcurrentHashMap<K, Entry<V>> results = new ConcurrentHashMap<>();
+	private final ConcurrentLinkedQueue<K> clock = new ConcurrentLinkedQueue<>();
+	private final AtomicLong weight = new AtomicLong();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public Memoizer(BiFunction<Function<K, V>, K, V> function, long maxSize) {
+		this(function, maxSize, (key, value) -> 1);
+	}
+
+	public Memoizer(BiFunction<Function<K, V>, K, V> function, long maxWeight,
+			ToLongBiFunction<? super K, ? super V> weigher) {
+		this.function = function;
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+	}
+
+	@Override
+	public V apply(K key) {
+		Entry<V> entry = results.get(key);
+		if (entry != null) {
+			hits.increment();
+			if (!entry.referenced) {
+				entry.referenced = true;
+			}
+			return entry.value;
+		}
+		misses.increment();
+		V value = function.apply(this, key);
+		entry = new Entry<>(value, weigher.applyAsLong(key, value));
+		Entry<V> earlier = results.putIfAbsent(key, entry);
+		if (earlier != null) { // another thread finished first
+			return earlier.value;
+		}
+		clock.add(key);
+		if (weight.addAndGet(entry.weight) > maxWeight) {
+			evict();
+		}
+		return value;
+	}
+
+	private void evict() {
+		while (weight.get() > maxWeight) {
+			K key = clock.poll();
+			if (key == null) {
+				return;
+			}
+			Entry<V> entry = results.get(key);
+			if (entry == null) {
+				continue;
+			}
+			if (entry.referenced) { // second chance
+				entry.referenced = false;
+				clock.add(key);
+			} else if (results.remove(key, entry)) {
+				weight.addAndGet(-entry.weight);
+				evictions.increment();
+			}
+		}
+	}
+
+	public long hits() {
+		return hits.sum();
+	}
+
+	public long misses() {
+		return misses.sum();
+	}
+
+	public long evictions() {
+		return evictions.sum();
+	}
+
+	public int size() {
+		return results.size();
+	}
+
+	public long weight() {
+		return weight.get();
+	}
+
+	@Override
+	public String toString() {
+		return stats(hits(), misses(), evictions(), size());
+	}
+
+	private static String stats(long hits, long misses, long evictions, int size) {
+		return String.format("%d hits, %d misses, %d evictions, %d cached", hits, misses, evictions, size);
+	}
+
+	// A Memoizer for long keys that never boxes them: the keys are spread over
+	// lock-striped open-addressing tables that start small and grow with use; once
+	// maxSize results are cached, the table about to take a new one first evicts
+	// in CLOCK order (a table that is still empty can overshoot by its one entry)
+	public static final class OfLong<V> implements LongFunction<V> {
+		private static final Object ABSENT = new Object();
+		private final LongBody<V> function;
+		private final Segment[] segments;
+		private final long maxSize;
+		private final AtomicLong cached = new AtomicLong();
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+		private final LongAdder evictions = new LongAdder();
+
+		public OfLong(LongBody<V> function, long maxSize) {
+			this.function = function;
+			this.maxSize = Math.max(1, maxSize);
+			int count = (int) Math.min(16, Math.max(1, maxSize / 64));
+			count = Integer.highestOneBit(count);
+			segments = new Segment[count];
+			for (int i = 0; i < count; i++) {
+				segments[i] = new Segment();
+			}
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V apply(long key) {
+			long hash = spread(key);
+			Segment segment = segments[(int) (hash >>> 60) & (segments.length - 1)];
+			Object found;
+			synchronized (segment) {
+				found = segment.get(key, hash);
+			}
+			if (found != ABSENT) {
+				hits.increment();
+				return (V) found;
+			}
+			misses.increment();
+			V value = function.apply(this, key); // no lock held while computing
+			synchronized (segment) {
+				found = segment.get(key, hash);
+				if (found == ABSENT) {
+					// make room first, so the new result is never its own victim
+					while (cached.get() >= maxSize && segment.size > 0) {
+						segment.evictOne();
+						cached.decrementAndGet();
+						evictions.increment();
+					}
+					segment.put(key, hash, value);
+					cached.incrementAndGet();
+				}
+			}
+			return found == ABSENT ? value : (V) found;
+		}
+
+		private static long spread(long key) {
+			key *= 0x9E3779B97F4A7C15L; // Fibonacci hashing, fittingly
+			return key ^ (key >>> 29);
+		}
+
+		public long hits() {
+			return hits.sum();
+		}
+
+		public long misses() {
+			return misses.sum();
+		}
+
+		public long evictions() {
+			return evictions.sum();
+		}
+
+		public int size() {
+			return (int) cached.get();
+		}
+
+		@Override
+		public String toString() {
+			return stats(hits(), misses(), evictions(), size());
+		}
+
+		// Linear probing over a table kept at most half full; guarded by its own monitor
+		private static final class Segment {
+			private static final int INITIAL_SLOTS = 16;
+			private int mask;
+			private long[] keys;
+			private Object[] values;
+			private boolean[] used;
+			private boolean[] referenced;
+			private int size;
+			private int hand; // the CLOCK hand
+
+			Segment() {
+				allocate(INITIAL_SLOTS);
+			}
+
+			private void allocate(int slots) {
+				mask = slots - 1;
+				keys = new long[slots];
+				values = new Object[slots];
+				used = new boolean[slots];
+				referenced = new boolean[slots];
+				size = 0;
+				hand = 0;
+			}
+
+			// double the table, reinserting every entry
+			private void grow() {
+				long[] oldKeys = keys;
+				Object[] oldValues = values;
+				boolean[] oldUsed = used;
+				boolean[] oldReferenced = referenced;
+				allocate(oldKeys.length * 2);
+				for (int j = 0; j < oldKeys.length; j++) {
+					if (oldUsed[j]) {
+						int i = insert(oldKeys[j], spread(oldKeys[j]), oldValues[j]);
+						referenced[i] = oldReferenced[j];
+					}
+				}
+			}
+
+			Object get(long key, long hash) {
+				for (int i = (int) hash & mask; used[i]; i = (i + 1) & mask) {
+					if (keys[i] == key) {
+						referenced[i] = true;
+						return values[i];
+					}
+				}
+				return ABSENT;
+			}
+
+			// *key* must not be present yet
+			void put(long key, long hash, Object value) {
+				if ((size + 1) * 2 > keys.length && keys.length < 1 << 30) {
+					grow();
+				}
+				insert(key, hash, value);
+			}
+
+			private int insert(long key, long hash, Object value) {
+				int i = (int) hash & mask;
+				while (used[i]) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = key;
+				values[i] = value;
+				used[i] = true;
+				referenced[i] = false;
+				size++;
+				return i;
+			}
+
+			void evictOne() {
+				while (true) {
+					int i = hand;
+					hand = (hand + 1) & mask;
+					if (!used[i]) {
+						continue;
+					}
+					if (referenced[i]) { // second chance
+						referenced[i] = false;
+					} else {
+						remove(i);
+						return;
+					}
+				}
+			}
+
+			// Empty slot *i*, then pull back any later entry of the same probe run that
+			// would otherwise no longer be reachable from its home slot
+			private void remove(int i) {
+				used[i] = false;
+				values[i] = null;
+				size--;
+				for (int j = (i + 1) & mask; used[j]; j = (j + 1) & mask) {
+					int home = (int) spread(keys[j]) & mask;
+					boolean reachable = i <= j ? (home > i && home <= j) : (home > i || home <= j);
+					if (!reachable) {
+						keys[i] = keys[j];
+						values[i] = values[j];
+						referenced[i] = referenced[j];
+						used[i] = true;
+						used[j] = false;
+						values[j] = null;
+						i = j;
+					}
+				}
+			}
+		}
+	}
+
+	// The same for int keys, which are widened to long
+	public static final class OfInt<V> implements IntFunction<V> {
+		private final OfLong<V> memo;
+
+		public OfInt(IntBody<V> function, long maxSize) {
+			memo = new OfLong<>((self, key) -> function.apply(this, (int) key), maxSize);
+		}
+
+		@Override
+		public V apply(int key) {
+			return memo.apply(key);
+		}
+
+		public long hits() {
+			return memo.hits();
+		}
+
+		public long misses() {
+			return memo.misses();
+		}
+
+		public long evictions() {
+			return memo.evictions();
+		}
+
+		public int size() {
+			return memo.size();
+		}
+
+		@Override
+		public String toString() {
+			return memo.toString();
+		}
+	}
+
+	public static void main(String[] args) {
+		// the number of ways to climb n stairs taking 1 or 2 at a time, shared by 4 threads
+		Memoizer<Integer, Long> stairs = new Memoizer<>(
+				(self, n) -> n < 2 ? 1L : self.apply(n - 1) + self.apply(n - 2), 1_000);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				for (int n = 0; n < 90; n++) {
+					stairs.apply(n);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		System.out.println("ways to climb 89 stairs: " + stairs.apply(89) + " (" + stairs + ")");
+
+		// keys that never get boxed, in a memo too small to keep them all
+		Memoizer.OfLong<Long> collatz = new Memoizer.OfLong<>(
+				(self, n) -> n == 1 ? 0L : 1 + self.apply(n % 2 == 0 ? n / 2 : 3 * n + 1), 50_000);
+		long longest = 0;
+		for (long n = 1; n < 100_000; n++) {
+			longest = Math.max(longest, collatz.apply(n));
+		}
+		System.out.println("longest Collatz chain below 100,000: " + longest + " steps (" + collatz + ")");
+	}
+}
@@ -16,14 +16,58 @@
 
 package chapter1;
 
-import java.util.Random;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class UnbreakableEncryption {
+	private static final SecureRandom RANDOM = new SecureRandom();
+	private static final int BLOCK_SIZE = 1 << 20; // bytes per read, XOR and write when streaming
+
+	// Where the bytes of a pad come from; a pad must never be used twice
+	public interface KeySource {
+		// fill the remaining space of *pad*
+		void fill(ByteBuffer pad) throws IOException;
+
+		// Every fill() draws into a block of its own, so concurrent calls sharing
+		// this KeySource can never hand out the same pad bytes
+		static KeySource random(SecureRandom random) {
+			return pad -> {
+				while (pad.hasRemaining()) {
+					byte[] bytes = new byte[Math.min(BLOCK_SIZE, pad.remaining())];
+					random.nextBytes(bytes);
+					pad.put(bytes);
+					Arrays.fill(bytes, (byte) 0); // the pad only lives on in *pad*
+				}
+			};
+		}
+
+
+		// Read the pad from *channel*, for example a pad file made ahead of time
+		static KeySource pad(ReadableByteChannel channel) {
+			return pad -> {
+				if (readFully(channel, pad) && pad.hasRemaining()) {
+					throw new EOFException("The pad is shorter than the message");
+				}
+			};
+		}
+	}
+
 	// Generate *length* random bytes
 	private static byte[] randomKey(int length) {
 		byte[] dummy = new byte[length];
-		Random random = new Random();
-		random.nextBytes(dummy);
+		RANDOM.nextBytes(dummy);
 		return dummy;
 	}
 
@@ -47,9 +91,211 @@ public class UnbreakableEncryption {
 		return new String(decrypted);
 	}
 
-	public static void main(String[] args) {
+	// Stream *plain* to *cipher* one block at a time, XORed with a pad drawn from *keys*
+	// The pad goes to *padOut*, unless it is null because the other side already has it
+	// Returns the number of bytes encrypted
+	public static long encrypt(ReadableByteChannel plain, WritableByteChannel cipher,
+			WritableByteChannel padOut, KeySource keys) throws IOException {
+		ByteBuffer data = ByteBuffer.allocateDirect(BLOCK_SIZE);
+		ByteBuffer pad = ByteBuffer.allocateDirect(BLOCK_SIZE);
+		long total = 0;
+		boolean more = true;
+		while (more) {
+			data.clear();
+			more = !readFully(plain, data);
+			data.flip();
+			if (!data.hasRemaining()) {
+				break;
+			}
+			pad.clear().limit(data.limit());
+			keys.fill(pad);
+			pad.flip();
+			xor(data, pad);
+			total += data.remaining();
+			writeFully(cipher, data);
+			if (padOut != null) {
+				writeFully(padOut, pad);
+			}
+		}
+		return total;
+	}
+
+	// XOR is its own inverse, so decrypting is encrypting again with the same pad
+	public static long decrypt(ReadableByteChannel cipher, ReadableByteChannel pad,
+			WritableByteChannel plain) throws IOException {
+		return encrypt(cipher, plain, null, KeySource.pad(pad));
+	}
+
+	// data[i] ^= pad[i] for the remaining bytes of both, 8 bytes at a time
+	// Positions are left alone
+	static void xor(ByteBuffer data, ByteBuffer pad) {
+		xor(data, pad, data);
+	}
+
+	// out[i] = data[i] ^ pad[i] for the remaining bytes of all three
+	static void xor(ByteBuffer data, ByteBuffer pad, ByteBuffer out) {
+		int count = Math.min(Math.min(data.remaining(), pad.remaining()), out.remaining());
+		int d = data.position();
+		int p = pad.position();
+		int o = out.position();
+		int i = 0;
+		for (; i <= count - Long.BYTES; i += Long.BYTES) {
+			out.putLong(o + i, data.getLong(d + i) ^ pad.getLong(p + i));
+		}
+		for (; i < count; i++) {
+			out.put(o + i, (byte) (data.get(d + i) ^ pad.get(p + i)));
+		}
+	}
+
+	// Write *size* bytes from *keys* to a new pad file
+	public static void writePad(Path pad, long size, KeySource keys) throws IOException {
+		ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+		try (FileChannel out = FileChannel.open(pad, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			for (long written = 0; written < size; written += block.limit()) {
+				block.clear().limit((int) Math.min(BLOCK_SIZE, size - written));
+				keys.fill(block);
+				block.flip();
+				writeFully(out, block);
+			}
+		}
+	}
+
+	// Encrypt the file *plain* into *cipher* with the pad file *pad*, which must be at
+	// least as long; all three are memory-mapped and XORed a segment per task on *pool*
+	public static FileKeyPair encrypt(Path plain, Path pad, Path cipher, ForkJoinPool pool) throws IOException {
+		xorFiles(plain, pad, cipher, pool);
+		return new FileKeyPair(pad, cipher);
+	}
+
+	public static void decrypt(FileKeyPair kp, Path plain, ForkJoinPool pool) throws IOException {
+		xorFiles(kp.key2, kp.key1, plain, pool);
+	}
+
+	private static void xorFiles(Path data, Path pad, Path out, ForkJoinPool pool) throws IOException {
+		// out is truncated before anything is read, which would wipe an input it aliases
+		if (Files.exists(out) && (Files.isSameFile(out, data) || Files.isSameFile(out, pad))) {
+			throw new IllegalArgumentException(out + " is also an input");
+		}
+		try (FileChannel dataChannel = FileChannel.open(data, StandardOpenOption.READ);
+				FileChannel padChannel = FileChannel.open(pad, StandardOpenOption.READ);
+				FileChannel outChannel = FileChannel.open(out, StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long size = dataChannel.size();
+			if (padChannel.size() < size) {
+				throw new EOFException("The pad is shorter than the message");
+			}
+			try {
+				pool.invoke(new SegmentTask(dataChannel, padChannel, outChannel, 0, size));
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	// XORs bytes [from, to) of the files, split in halves down to SEGMENT_SIZE
+	// Each task maps only its own segment, so no mapping comes near the 2 GB limit
+	private static final class SegmentTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final long SEGMENT_SIZE = 1L << 26; // 64 MB
+		private final FileChannel data, pad, out;
+		private final long from, to;
+
+		SegmentTask(FileChannel data, FileChannel pad, FileChannel out, long from, long to) {
+			this.data = data;
+			this.pad = pad;
+			this.out = out;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SEGMENT_SIZE) {
+				try {
+					xor(data.map(FileChannel.MapMode.READ_ONLY, from, to - from),
+							pad.map(FileChannel.MapMode.READ_ONLY, from, to - from),
+							out.map(FileChannel.MapMode.READ_WRITE, from, to - from));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			} else {
+				long middle = from + (to - from) / 2;
+				invokeAll(new SegmentTask(data, pad, out, from, middle), new SegmentTask(data, pad, out, middle, to));
+			}
+		}
+	}
+
+	// Read until *buffer* is full; returns true if the channel ran out first
+	private static boolean readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Write all of *buffer* without moving its position
+	private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		ByteBuffer view = buffer.duplicate();
+		while (view.hasRemaining()) {
+			channel.write(view);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
 		KeyPair kp = encrypt("One Time Pad!");
 		String result = decrypt(kp);
 		System.out.println(result);
+
+		// stream 64 MB through files without holding them in the heap
+		Path plain = Files.createTempFile("plain", ".bin");
+		Path pad = Files.createTempFile("pad", ".bin");
+		Path cipher = Files.createTempFile("cipher", ".bin");
+		Path back = Files.createTempFile("back", ".bin");
+		Path freshPad = Files.createTempFile("pad", ".bin");
+		try {
+			byte[] block = new byte[1 << 20];
+			try (FileChannel out = FileChannel.open(plain, StandardOpenOption.WRITE)) {
+				for (int i = 0; i < 64; i++) {
+					Arrays.fill(block, (byte) i);
+					out.write(ByteBuffer.wrap(block));
+				}
+			}
+			long startTime = System.nanoTime();
+			try (FileChannel in = FileChannel.open(plain, StandardOpenOption.READ);
+					FileChannel out = FileChannel.open(cipher, StandardOpenOption.WRITE);
+					FileChannel padOut = FileChannel.open(pad, StandardOpenOption.WRITE)) {
+				encrypt(in, out, padOut, KeySource.random(RANDOM));
+			}
+			long encryptTime = System.nanoTime() - startTime;
+			startTime = System.nanoTime();
+			try (FileChannel in = FileChannel.open(cipher, StandardOpenOption.READ);
+					FileChannel padIn = FileChannel.open(pad, StandardOpenOption.READ);
+					FileChannel out = FileChannel.open(back, StandardOpenOption.WRITE)) {
+				decrypt(in, padIn, out);
+			}
+			long decryptTime = System.nanoTime() - startTime;
+			System.out.printf("64 MB encrypted at %.0f MB/s (pad from SecureRandom), decrypted at %.0f MB/s, same: %b%n",
+					64e9 / encryptTime, 64e9 / decryptTime, Arrays.equals(Files.readAllBytes(plain), Files.readAllBytes(back)));
+
+			// the same, file to file through memory maps, with a fresh pad file
+			writePad(freshPad, Files.size(plain), KeySource.random(RANDOM));
+			ForkJoinPool pool = ForkJoinPool.commonPool();
+			startTime = System.nanoTime();
+			FileKeyPair fkp = encrypt(plain, freshPad, cipher, pool);
+			encryptTime = System.nanoTime() - startTime;
+			startTime = System.nanoTime();
+			decrypt(fkp, back, pool);
+			decryptTime = System.nanoTime() - startTime;
+			System.out.printf("memory-mapped on %d threads: encrypted at %.0f MB/s, decrypted at %.0f MB/s, same: %b%n",
+					pool.getParallelism(), 64e9 / encryptTime, 64e9 / decryptTime,
+					Arrays.equals(Files.readAllBytes(plain), Files.readAllBytes(back)));
+		} finally {
+			for (Path path : new Path[] { plain, pad, cipher, back, freshPad }) {
+				Files.delete(path);
+			}
+		}
 	}
 }
@@ -0,0 +1,215 @@
+// AnytimeSearch.java
+// From Classic Computer Science Problems in Java Chapter 2
+// Copyright 2020 David Kopec
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package chapter2;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleBiFunction;
+import java.util.function.ToDoubleFunction;
+
+import chapter2.GenericSearch.AddressableQueue;
+import chapter2.GenericSearch.Node;
+import chapter2.Maze.MazeLocation;
+
+// Anytime Repairing A* (ARA*)
+// Starts as weighted A* with f = g + weight * h, which finds a path quickly that costs at
+// most *weight* times the optimum, then lowers the weight step by step towards 1, reusing
+// the previous work each time. Each call to improve() runs until its time or expansion
+// budget runs out and returns the best path found so far with its suboptimality bound.
+public class AnytimeSearch<T> {
+
+	public static final class Solution<T> {
+		// the states from initial to goal as they were when this was returned, since
+		// later calls to improve() rewrite the Nodes; null if no goal has been reached yet
+		public final List<T> path;
+		public final double cost;
+		public final double bound; // cost is at most bound times the optimal cost
+		public final boolean optimal; // nothing left to improve
+
+		Solution(List<T> path, double cost, double bound, boolean optimal) {
+			this.path = path;
+			this.cost = cost;
+			this.bound = bound;
+			this.optimal = optimal;
+		}
+	}
+
+	private final Predicate<T> goalTest;
+	private final Function<T, List<T>> successors;
+	private final ToDoubleFunction<T> heuristic;
+	private final ToDoubleBiFunction<T, T> cost;
+	private final double weightStep;
+	private double weight;
+	// every state ever reached, with Node.heuristic holding weight * h
+	private final Map<T, Node<T>> reached = new HashMap<>();
+	private AddressableQueue<T> open = new AddressableQueue<>();
+	private final Set<T> closed = new HashSet<>();
+	// closed states whose cost went down; they are reopened when the weight drops
+	private final Set<Node<T>> inconsistent = new LinkedHashSet<>();
+	private Node<T> bestGoal;
+	private double bound = Double.POSITIVE_INFINITY;
+	private boolean finished;
+
+	public AnytimeSearch(T initial, Predicate<T> goalTest, Function<T, List<T>> successors,
+			ToDoubleFunction<T> heuristic, ToDoubleBiFunction<T, T> cost,
+			double initialWeight, double weightStep) {
+		this.goalTest = goalTest;
+		this.successors = successors;
+		this.heuristic = heuristic;
+		this.cost = cost;
+		this.weight = Math.max(1.0, initialWeight);
+		this.weightStep = weightStep;
+		Node<T> initialNode = new Node<>(initial, null, 0.0, weight * heuristic.applyAsDouble(initial));
+		reached.put(initial, initialNode);
+		open.offer(initialNode);
+		if (goalTest.test(initial)) {
+			bestGoal = initialNode;
+		}
+	}
+
+	// Search for at most *nanos* nanoseconds and *maxExpansions* expansions,
+	// then report the best path so far; call again to keep improving it
+	public Solution<T> improve(long nanos, long maxExpansions) {
+		long startTime = System.nanoTime();
+		long expansions = 0;
+		while (!finished) {
+			// one weighted A* pass, stopping once no open state could lead to a cheaper goal
+			while (!open.isEmpty() && (bestGoal == null || bestGoal.cost > key(open.peek()))) {
+				if (expansions++ >= maxExpansions || System.nanoTime() - startTime > nanos) {
+					return solution();
+				}
+				expand(open.poll());
+			}
+			updateBound();
+			if (weight <= 1.0 || (open.isEmpty() && inconsistent.isEmpty())) {
+				finished = true; // a pass with weight 1 is plain A*, so its result is optimal
+				bound = bestGoal == null ? Double.POSITIVE_INFINITY : 1.0;
+			} else {
+				lowerWeight(Math.max(1.0, weight - weightStep));
+			}
+		}
+		return solution();
+	}
+
+	private void expand(Node<T> node) {
+		closed.add(node.state);
+		for (T child : successors.apply(node.state)) {
+			double newCost = node.cost + cost.applyAsDouble(node.state, child);
+			Node<T> childNode = reached.get(child);
+			if (childNode == null) {
+				childNode = new Node<>(child, node, newCost, weight * heuristic.applyAsDouble(child));
+				reached.put(child, childNode);
+				open.offer(childNode);
+			} else if (childNode.cost > newCost) {
+				childNode.cost = newCost;
+				childNode.parent = node;
+				if (childNode.heapIndex >= 0) {
+					open.decreaseKey(childNode);
+				} else if (closed.contains(child)) {
+					inconsistent.add(childNode); // wait for the next pass
+				} else {
+					open.offer(childNode);
+				}
+			} else {
+				continue;
+			}
+			if ((bestGoal == null || childNode.cost < bestGoal.cost) && goalTest.test(child)) {
+				bestGoal = childNode;
+			}
+		}
+	}
+
+	// The optimum is at least the smallest unweighted f among states that could still improve
+	private void updateBound() {
+		if (bestGoal == null) {
+			return;
+		}
+		double lowest = Double.POSITIVE_INFINITY;
+		for (Node<T> node : open.toList()) {
+			lowest = Math.min(lowest, node.cost + node.heuristic / weight);
+		}
+		for (Node<T> node : inconsistent) {
+			lowest = Math.min(lowest, node.cost + node.heuristic / weight);
+		}
+		bound = Math.min(weight, lowest > 0 ? bestGoal.cost / lowest : weight);
+		bound = Math.max(bound, 1.0);
+	}
+
+	// Rescale every key to *newWeight* and reopen the inconsistent states
+	private void lowerWeight(double newWeight) {
+		List<Node<T>> toOpen = open.toList();
+		toOpen.addAll(inconsistent);
+		inconsistent.clear();
+		closed.clear();
+		for (Node<T> node : reached.values()) {
+			node.heuristic = node.heuristic / weight * newWeight;
+			node.heapIndex = -1;
+		}
+		open = new AddressableQueue<>();
+		for (Node<T> node : toOpen) {
+			open.offer(node);
+		}
+		weight = newWeight;
+	}
+
+	private static <T> double key(Node<T> node) {
+		return node.cost + node.heuristic;
+	}
+
+	// A snapshot of the best path; its cost is summed along the path, since a
+	// cheaper route to one of its ancestors can leave bestGoal.cost out of date
+	private Solution<T> solution() {
+		if (bestGoal == null) {
+			return new Solution<>(null, Double.POSITIVE_INFINITY, bound, finished);
+		}
+		List<T> path = GenericSearch.nodeToPath(bestGoal);
+		double pathCost = 0.0;
+		for (int i = 1; i < path.size(); i++) {
+			pathCost += cost.applyAsDouble(path.get(i - 1), path.get(i));
+		}
+		return new Solution<>(Collections.unmodifiableList(path), pathCost, bound, finished);
+	}
+
+	public static void main(String[] args) {
+		int size = 1000;
+		MazeLocation start = new MazeLocation(0, 0);
+		Maze m = new Maze(size, size, start, new MazeLocation(size - 1, size - 1), 0.25);
+		AnytimeSearch<MazeLocation> search = new AnytimeSearch<>(start, m::goalTest, m::successors,
+				m::manhattanDistance, (from, to) -> 1.0, 3.0, 0.5);
+		// grant 20 ms at a time until the path is proven optimal
+		for (int slice = 1; slice <= 100; slice++) {
+			Solution<MazeLocation> solution = search.improve(20_000_000L, Long.MAX_VALUE);
+			if (solution.path == null) {
+				System.out.printf("After %d ms: no path yet%n", slice * 20);
+			} else {
+				System.out.printf("After %d ms: path of %.0f steps, at most %.3f times optimal%n",
+						slice * 20, solution.cost, solution.bound);
+			}
+			if (solution.optimal) {
+				break;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+// AsyncSearch.java
+// From Classic Computer Science Problems in Java Chapter 2
+// Copyright 2020 David Kopec
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package chapter2;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleBiFunction;
+import java.util.function.ToDoubleFunction;
+
+import chapter2.GenericSearch.Node;
+import chapter2.Maze.MazeLocation;
+
+// Runs GenericSearch searches on an Executor and hands back a CompletableFuture
+// Once the future is completed by anyone else (cancel(), orTimeout(), complete()...)
+// or the worker thread is interrupted, the search stops at its next expansion
+// On Java 21 and later, Executors.newVirtualThreadPerTaskExecutor() makes a good *executor*
+public final class AsyncSearch {
+
+	private AsyncSearch() {
+	}
+
+	public static <T> CompletableFuture<Node<T>> dfs(T initial, Predicate<T> goalTest,
+			Function<T, List<T>> successors, Executor executor) {
+		return run(future -> GenericSearch.dfs(initial, goalTest, cancellable(future, successors)), executor);
+	}
+
+	public static <T> CompletableFuture<Node<T>> bfs(T initial, Predicate<T> goalTest,
+			Function<T, List<T>> successors, Executor executor) {
+		return run(future -> GenericSearch.bfs(initial, goalTest, cancellable(future, successors)), executor);
+	}
+
+	public static <T> CompletableFuture<Node<T>> astar(T initial, Predicate<T> goalTest,
+			Function<T, List<T>> successors, ToDoubleFunction<T> heuristic,
+			ToDoubleBiFunction<T, T> cost, Executor executor) {
+		return run(future -> GenericSearch.astar(initial, goalTest, cancellable(future, successors),
+				heuristic, cost), executor);
+	}
+
+	private static <T> CompletableFuture<Node<T>> run(Function<CompletableFuture<?>, Node<T>> search,
+			Executor executor) {
+		CompletableFuture<Node<T>> future = new CompletableFuture<>();
+		try {
+			executor.execute(() -> {
+				if (future.isDone()) {
+					return; // abandoned before it even started
+				}
+				try {
+					future.complete(search.apply(future));
+				} catch (CancellationException e) {
+					future.cancel(false); // a no-op unless the thread was interrupted
+				} catch (Throwable t) {
+					future.completeExceptionally(t);
+				}
+			});
+		} catch (Throwable t) { // for example a RejectedExecutionException
+			future.completeExceptionally(t);
+		}
+		return future;
+	}
+
+	// The searches call the successor function once per expansion, which makes it
+	// the natural place to check whether anyone still wants the answer
+	private static <T> Function<T, List<T>> cancellable(CompletableFuture<?> future,
+			Function<T, List<T>> successors) {
+		return state -> {
+			if (future.isDone() || Thread.currentThread().isInterrupted()) {
+				throw new CancellationException();
+			}
+			return successors.apply(state);
+		};
+	}
+
+	public static void main(String[] args) throws Exception {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		Maze m = new Maze(2000, 2000, new MazeLocation(0, 0), new MazeLocation(1999, 1999), 0.1);
+		MazeLocation start = new MazeLocation(0, 0);
+
+		// a search we give up on: it stops soon after the timeout instead of running to the end
+		AtomicLong expansions = new AtomicLong();
+		CompletableFuture<Node<MazeLocation>> abandoned = bfs(start, m::goalTest, ml -> {
+			expansions.incrementAndGet();
+			return m.successors(ml);
+		}, executor).orTimeout(50, TimeUnit.MILLISECONDS);
+		try {
+			abandoned.join();
+		} catch (Exception e) {
+			System.out.println("First search gave up: " + e.getCause());
+		}
+		long atTimeout = expansions.get();
+		Thread.sleep(200);
+		System.out.printf("Expansions at the timeout: %d, 200 ms later: %d%n", atTimeout, expansions.get());
+
+		// a search we wait for
+		Node<MazeLocation> solution = astar(start, m::goalTest, m::successors, m::manhattanDistance,
+				(from, to) -> 1.0, executor).get();
+		System.out.println(solution == null ? "No solution found using A*!"
+				: "A* found a path of " + (GenericSearch.nodeToPath(solution).size() - 1) + " steps");
+		executor.shutdown();
+	}
+
+}
@@ -0,0 +1,207 @@
+// CompactMaze.java
+// From Classic Computer Science Problems in Java Chapter 2
+// Copyright 2020 David Kopec
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package chapter2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import chapter2.Maze.MazeLocation;
+import chapter2.PrimitiveSearch.EdgeConsumer;
+
+// A Maze that stores one bit per cell, addressed by row * columns + column
+// A 10,000 x 10,000 maze takes 12.5 MB instead of the 400+ MB of a Cell[][]
+public class CompactMaze {
+	private final int rows, columns;
+	private final int start, goal;
+	private final long[] blocked; // bit i is set if cell i is blocked
+
+	public CompactMaze(int rows, int columns, int start, int goal) {
+		if ((long) rows * columns > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("A CompactMaze can have at most Integer.MAX_VALUE cells");
+		}
+		this.rows = rows;
+		this.columns = columns;
+		this.start = start;
+		this.goal = goal;
+		blocked = new long[(int) (((long) rows * columns + 63) >>> 6)];
+	}
+
+	public CompactMaze(int rows, int columns, MazeLocation start, MazeLocation goal, double sparseness) {
+		this(rows, columns, start.row * columns + start.column, goal.row * columns + goal.column);
+		randomlyFill(sparseness);
+		// the start and goal are never blocked
+		setBlocked(this.start, false);
+		setBlocked(this.goal, false);
+	}
+
+	private void randomlyFill(double sparseness) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int size = size();
+		for (int i = 0; i < size; i++) {
+			if (random.nextDouble() < sparseness) {
+				blocked[i >>> 6] |= 1L << i;
+			}
+		}
+	}
+
+	public int rows() {
+		return rows;
+	}
+
+	public int columns() {
+		return columns;
+	}
+
+	public int size() {
+		return rows * columns;
+	}
+
+	public int start() {
+		return start;
+	}
+
+	public int goal() {
+		return goal;
+	}
+
+	public int index(int row, int column) {
+		return row * columns + column;
+	}
+
+	public int index(MazeLocation ml) {
+		return index(ml.row, ml.column);
+	}
+
+	public MazeLocation location(int index) {
+		return new MazeLocation(index / columns, index % columns);
+	}
+
+	public boolean isBlocked(int index) {
+		return (blocked[index >>> 6] & (1L << index)) != 0;
+	}
+
+	public void setBlocked(int index, boolean isBlocked) {
+		if (isBlocked) {
+			blocked[index >>> 6] |= 1L << index;
+		} else {
+			blocked[index >>> 6] &= ~(1L << index);
+		}
+	}
+
+	public boolean goalTest(int index) {
+		return index == goal;
+	}
+
+	// Writes the open neighbors of *index* into *out* (which needs room for 4)
+	// and returns how many were written
+	public int successors(int index, int[] out) {
+		int count = 0;
+		int column = index % columns;
+		if (index < size() - columns && !isBlocked(index + columns)) {
+			out[count++] = index + columns;
+		}
+		if (index - columns >= 0 && !isBlocked(index - columns)) {
+			out[count++] = index - columns;
+		}
+		if (column + 1 < columns && !isBlocked(index + 1)) {
+			out[count++] = index + 1;
+		}
+		if (column - 1 >= 0 && !isBlocked(index - 1)) {
+			out[count++] = index - 1;
+		}
+		return count;
+	}
+
+	// Same as above, but hands each neighbor to *sink* with a cost of 1
+	// so that a CompactMaze can be searched directly by PrimitiveSearch
+	public void successors(int index, EdgeConsumer sink) {
+		int column = index % columns;
+		if (index < size() - columns && !isBlocked(index + columns)) {
+			sink.accept(index + columns, 1.0);
+		}
+		if (index - columns >= 0 && !isBlocked(index - columns)) {
+			sink.accept(index - columns, 1.0);
+		}
+		if (column + 1 < columns && !isBlocked(index + 1)) {
+			sink.accept(index + 1, 1.0);
+		}
+		if (column - 1 >= 0 && !isBlocked(index - 1)) {
+			sink.accept(index - 1, 1.0);
+		}
+	}
+
+	public double euclideanDistance(int index) {
+		int xdist = index % columns - goal % columns;
+		int ydist = index / columns - goal / columns;
+		return Math.sqrt((xdist * xdist) + (ydist * ydist));
+	}
+
+	public double manhattanDistance(int index) {
+		int xdist = Math.abs(index % columns - goal % columns);
+		int ydist = Math.abs(index / columns - goal / columns);
+		return (xdist + ydist);
+	}
+
+	public List<MazeLocation> toPath(int[] indices) {
+		List<MazeLocation> path = new ArrayList<>(indices.length);
+		for (int index : indices) {
+			path.add(location(index));
+		}
+		return path;
+	}
+
+	// return a nicely formatted version of the maze for printing
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				int index = index(row, column);
+				if (index == start) {
+					sb.append(Maze.Cell.START);
+				} else if (index == goal) {
+					sb.append(Maze.Cell.GOAL);
+				} else {
+					sb.append(isBlocked(index) ? Maze.Cell.BLOCKED : Maze.Cell.EMPTY);
+				}
+			}
+			sb.append(System.lineSeparator());
+		}
+		return sb.toString();
+	}
+
+	public static void main(String[] args) {
+		CompactMaze small = new CompactMaze(10, 10, new MazeLocation(0, 0), new MazeLocation(9, 9), 0.2);
+		System.out.println(small);
+
+		int size = 2000;
+		CompactMaze m = new CompactMaze(size, size, new MazeLocation(0, 0),
+				new MazeLocation(size - 1, size - 1), 0.2);
+		PrimitiveSearch search = new PrimitiveSearch(m.size());
+		long startTime = System.nanoTime();
+		int[] path = search.astar(m.start(), m::goalTest, m::successors, m::manhattanDistance);
+		long elapsed = (System.nanoTime() - startTime) / 1_000_000;
+		if (path == null) {
+			System.out.println("No solution found using primitive A*!");
+		} else {
+			System.out.printf("Found a path of %d steps through a %dx%d maze in %d ms%n",
+					path.length - 1, size, size, elapsed);
+		}
+	}
+
+}
@@ -0,0 +1,81 @@
+// ContainsBenchmark.java
+// From Classic Computer Science Problems in Java Chapter 2
+// Copyright 2020 David Kopec
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package chapter2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+// Times the generic binaryContains against the int[] versions in GenericSearch
+// Each round looks up the same random keys, half of them present; the first
+// rounds let the JIT compile everything before the numbers mean much
+public class ContainsBenchmark {
+	private static final int LOOKUPS = 1_000_000;
+	private static final int ROUNDS = 5;
+
+	private static int sink; // keeps the JIT from discarding the lookups
+
+	private static void time(String name, int[] keys, IntPredicate contains) {
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long startTime = System.nanoTime();
+			int hits = 0;
+			for (int key : keys) {
+				hits += contains.test(key) ? 1 : 0;
+			}
+			best = Math.min(best, System.nanoTime() - startTime);
+			sink += hits;
+		}
+		System.out.printf("  %-22s %7.1f ns/lookup%n", name, (double) best / keys.length);
+	}
+
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		for (int size : new int[] { 1_000, 100_000, 10_000_000 }) {
+			int[] sorted = new int[size];
+			for (int i = 0; i < size; i++) {
+				sorted[i] = 2 * i; // only even keys are present
+			}
+			List<Integer> boxed = new ArrayList<>(size);
+			for (int value : sorted) {
+				boxed.add(value);
+			}
+			int[] layout = GenericSearch.eytzingerLayout(sorted);
+			int[] keys = random.ints(LOOKUPS, 0, 2 * size).toArray();
+
+			System.out.printf("%,d elements:%n", size);
+			time("List<Integer> generic", keys, key -> GenericSearch.binaryContains(boxed, key));
+			time("Arrays.binarySearch", keys, key -> Arrays.binarySearch(sorted, key) >= 0);
+			time("branchless int[]", keys, key -> GenericSearch.binaryContains(sorted, key));
+			time("Eytzinger int[]", keys, key -> GenericSearch.eytzingerContains(layout, key));
+			long best = Long.MAX_VALUE;
+			for (int round = 0; round < ROUNDS; round++) {
+				long startTime = System.nanoTime();
+				boolean[] found = GenericSearch.binaryContains(sorted, keys);
+				best = Math.min(best, System.nanoTime() - startTime);
+				sink += found[0] ? 1 : 0;
+			}
+			System.out.printf("  %-22s %7.1f ns/lookup%n", "batched int[]", (double) best / keys.length);
+		}
+		if (sink == 42) {
+			System.out.println();
+		}
+	}
+
+}
@@ -16,9 +16,14 @@
 
 package chapter2;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
 
 public class Gene {
 
@@ -27,37 +32,197 @@ public class Gene {
 	}
 
 	public static class Codon implements Comparable<Codon> {
+		private static final Nucleotide[] NUCLEOTIDES = Nucleotide.values();
+		private static final Codon[] ALL = new Codon[64];
+		static {
+			for (int code = 0; code < 64; code++) {
+				ALL[code] = new Codon(code);
+			}
+		}
 		public final Nucleotide first, second, third;
-		private final Comparator<Codon> comparator = Comparator.comparing((Codon c) -> c.first)
-				.thenComparing((Codon c) -> c.second)
-				.thenComparing((Codon c) -> c.third);
+		// two bits per nucleotide, first in the highest bits, so codes sort like codons
+		private final int code;
 
 		public Codon(String codonStr) {
 			first = Nucleotide.valueOf(codonStr.substring(0, 1));
 			second = Nucleotide.valueOf(codonStr.substring(1, 2));
 			third = Nucleotide.valueOf(codonStr.substring(2, 3));
+			code = first.ordinal() << 4 | second.ordinal() << 2 | third.ordinal();
+		}
+
+		private Codon(int code) {
+			first = NUCLEOTIDES[code >>> 4];
+			second = NUCLEOTIDES[(code >>> 2) & 3];
+			third = NUCLEOTIDES[code & 3];
+			this.code = code;
+		}
+
+		// The shared Codon for a 6-bit *code*
+		public static Codon of(int code) {
+			return ALL[code];
+		}
+
+		public int code() {
+			return code;
 		}
 
 		@Override
 		public int compareTo(Codon other) {
 			// first is compared first, then second, etc.
-			// IOW first takes precedence over second and second over third
-			return comparator.compare(this, other);
+			// IOW first takes precedence over second and second over third,
+			// which is exactly how the codes compare as numbers
+			return Integer.compare(code, other.code);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Codon && ((Codon) other).code == code;
+		}
+
+		@Override
+		public int hashCode() {
+			return code;
+		}
+
+		@Override
+		public String toString() {
+			return "" + first + second + third;
+		}
+	}
+
+	// Every codon position, grouped by codon, built the first time it is needed
+	private static final class CodonIndex {
+		final long present; // bit c is set if codon c occurs at all
+		final int[] start = new int[65]; // codon c occupies [start[c], start[c + 1]) below
+		final byte[] sorted; // all codes in ascending order
+		final int[] positions; // where in the gene each entry of sorted came from, ascending per codon
+
+		CodonIndex(byte[] codes, int size) {
+			// a counting sort, since there are only 64 distinct keys
+			long bits = 0;
+			for (int i = 0; i < size; i++) {
+				start[codes[i] + 1]++;
+				bits |= 1L << codes[i];
+			}
+			present = bits;
+			for (int c = 0; c < 64; c++) {
+				start[c + 1] += start[c];
+			}
+			sorted = new byte[size];
+			positions = new int[size];
+			int[] next = Arrays.copyOf(start, 64);
+			for (int i = 0; i < size; i++) {
+				int slot = next[codes[i]]++;
+				sorted[slot] = codes[i];
+				positions[slot] = i;
+			}
 		}
 	}
 
-	private ArrayList<Codon> codons = new ArrayList<>();
+	// one 6-bit codon code per byte
+	private final byte[] codons;
+	private final int size;
+	private volatile CodonIndex index;
+	private static final long MAP_WINDOW = 1L << 26; // 64 MB
 
 	public Gene(String geneStr) {
-		for (int i = 0; i <= geneStr.length() - 3; i += 3) {
+		size = geneStr.length() / 3;
+		codons = new byte[size];
+		for (int i = 0; i < size; i++) {
 			// Take every 3 characters in the String and form a Codon
-			codons.add(new Codon(geneStr.substring(i, i + 3)));
+			codons[i] = (byte) (nucleotide(geneStr.charAt(3 * i)) << 4
+					| nucleotide(geneStr.charAt(3 * i + 1)) << 2
+					| nucleotide(geneStr.charAt(3 * i + 2)));
+		}
+	}
+
+	private Gene(byte[] codons, int size) {
+		this.codons = codons;
+		this.size = size;
+	}
+
+	// Read a plain or FASTA nucleotide file (lines starting with '>' are headers,
+	// whitespace is ignored, lower case is accepted) straight into codon codes
+	// The file is mapped a window at a time, so only about a third of its size,
+	// one byte per codon, ever lives on the heap; a trailing partial codon is dropped
+	// like in Gene(String), and anything besides ACGT is an IllegalArgumentException
+	public static Gene load(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			if (fileSize / 3 > Integer.MAX_VALUE - 8) {
+				throw new IOException(path + " holds more codons than fit in an array");
+			}
+			byte[] codons = new byte[(int) (fileSize / 3)]; // an upper bound, never resized
+			byte[] chunk = new byte[1 << 16];
+			int size = 0;
+			int code = 0; // the codon being assembled
+			int bases = 0; // how many of its nucleotides have been seen
+			boolean header = false;
+			boolean lineStart = true;
+			for (long offset = 0; offset < fileSize; offset += MAP_WINDOW) {
+				MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+						Math.min(MAP_WINDOW, fileSize - offset));
+				while (window.hasRemaining()) {
+					int length = Math.min(chunk.length, window.remaining());
+					window.get(chunk, 0, length);
+					for (int i = 0; i < length; i++) {
+						byte b = chunk[i];
+						if (b == '\n' || b == '\r') {
+							header = false;
+							lineStart = true;
+							continue;
+						}
+						if (lineStart && b == '>') {
+							header = true;
+						}
+						lineStart = false;
+						if (header || b == ' ' || b == '\t') {
+							continue;
+						}
+						code = code << 2 | nucleotide(Character.toUpperCase((char) b));
+						if (++bases == 3) {
+							codons[size++] = (byte) code;
+							code = 0;
+							bases = 0;
+						}
+					}
+				}
+			}
+			return new Gene(codons, size);
+		}
+	}
+
+	private static int nucleotide(char c) {
+		switch (c) {
+		case 'A':
+			return 0;
+		case 'C':
+			return 1;
+		case 'G':
+			return 2;
+		case 'T':
+			return 3;
+		default:
+			throw new IllegalArgumentException("Invalid nucleotide: " + c);
 		}
 	}
 
+	// number of codons
+	public int size() {
+		return size;
+	}
+
+	public Codon codonAt(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Codon " + i + " of " + size);
+		}
+		return Codon.of(codons[i]);
+	}
+
 	public boolean linearContains(Codon key) {
-		for (Codon codon : codons) {
-			if (codon.compareTo(key) == 0) {
+		int code = key.code();
+		for (int i = 0; i < size; i++) {
+			if (codons[i] == code) {
 				return true; // found a match
 			}
 		}
@@ -65,14 +230,14 @@ public class Gene {
 	}
 
 	public boolean binaryContains(Codon key) {
-		// binary search only works on sorted collections
-		ArrayList<Codon> sortedCodons = new ArrayList<>(codons);
-		Collections.sort(sortedCodons);
+		// binary search only works on sorted collections; the index keeps a sorted copy
+		byte[] sortedCodons = index().sorted;
+		int code = key.code();
 		int low = 0;
-		int high = sortedCodons.size() - 1;
+		int high = sortedCodons.length - 1;
 		while (low <= high) { // while there is still a search space
-			int middle = (low + high) / 2;
-			int comparison = sortedCodons.get(middle).compareTo(key);
+			int middle = (low + high) >>> 1;
+			int comparison = Integer.compare(sortedCodons[middle], code);
 			if (comparison < 0) { // middle codon is less than key
 				low = middle + 1;
 			} else if (comparison > 0) { // middle codon is greater than key
@@ -84,7 +249,42 @@ public class Gene {
 		return false;
 	}
 
-	public static void main(String[] args) {
+	// A single bit test once the index exists
+	public boolean contains(Codon key) {
+		return (index().present & 1L << key.code()) != 0;
+	}
+
+	// Batch lookup: result[i] tells whether keys[i] occurs
+	public boolean[] contains(Codon[] keys) {
+		long present = index().present;
+		boolean[] result = new boolean[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			result[i] = (present & 1L << keys[i].code()) != 0;
+		}
+		return result;
+	}
+
+	public int count(Codon key) {
+		int[] start = index().start;
+		return start[key.code() + 1] - start[key.code()];
+	}
+
+	// Every codon index at which *key* occurs, in ascending order
+	public int[] positionsOf(Codon key) {
+		CodonIndex index = index();
+		return Arrays.copyOfRange(index.positions, index.start[key.code()], index.start[key.code() + 1]);
+	}
+
+	private CodonIndex index() {
+		CodonIndex result = index;
+		if (result == null) { // two threads may both build it, but they build the same thing
+			result = new CodonIndex(codons, size);
+			index = result;
+		}
+		return result;
+	}
+
+	public static void main(String[] args) throws IOException {
 		String geneStr = "ACGTGGCTCTCTAACGTACGTACGTACGGGGTTTATATATACCCTAGGACTCCCTTT";
 		Gene myGene = new Gene(geneStr);
 		Codon acg = new Codon("ACG");
@@ -93,7 +293,56 @@ public class Gene {
 		System.out.println(myGene.linearContains(gat)); // false
 		System.out.println(myGene.binaryContains(acg)); // true
 		System.out.println(myGene.binaryContains(gat)); // false
+		System.out.println(Arrays.toString(myGene.positionsOf(acg))); // [0, 7]
 
+		// a 3 megabase gene in which GAT never occurs
+		Random random = new Random(42);
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < 3_000_000) {
+			Codon codon = Codon.of(random.nextInt(64));
+			if (!codon.equals(gat)) {
+				sb.append(codon);
+			}
+		}
+		Gene bigGene = new Gene(sb.toString());
+		// the same gene as a FASTA file, loaded without ever building a String
+		Path fasta = Files.createTempFile("gene", ".fasta");
+		try {
+			StringBuilder file = new StringBuilder(">random test gene\n");
+			for (int i = 0; i < sb.length(); i += 60) {
+				file.append(sb, i, Math.min(i + 60, sb.length())).append('\n');
+			}
+			Files.writeString(fasta, file);
+			long loadStart = System.nanoTime();
+			Gene loaded = Gene.load(fasta);
+			System.out.printf("Loaded %d codons from %s in %d ms, identical: %b%n", loaded.size(), fasta,
+					(System.nanoTime() - loadStart) / 1_000_000,
+					Arrays.equals(loaded.codons, 0, loaded.size, bigGene.codons, 0, bigGene.size));
+		} finally {
+			Files.delete(fasta);
+		}
+		long startTime = System.nanoTime();
+		boolean found = bigGene.linearContains(gat);
+		System.out.printf("linearContains: %b in %d us%n", found, (System.nanoTime() - startTime) / 1_000);
+		startTime = System.nanoTime();
+		found = bigGene.contains(gat);
+		System.out.printf("building the index and the first lookup: %b in %d us%n", found,
+				(System.nanoTime() - startTime) / 1_000);
+		Codon[] keys = new Codon[1_000_000];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = Codon.of(random.nextInt(64));
+		}
+		for (int round = 0; round < 3; round++) { // the first rounds warm up the JIT
+			startTime = System.nanoTime();
+			boolean[] results = bigGene.contains(keys);
+			long elapsed = System.nanoTime() - startTime;
+			int hits = 0;
+			for (boolean result : results) {
+				hits += result ? 1 : 0;
+			}
+			System.out.printf("%d batched lookups (%d hits): %.1f ns each%n", keys.length, hits,
+					(double) elapsed / keys.length);
+		}
 	}
 
 }
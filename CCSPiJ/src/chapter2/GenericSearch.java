@@ -17,20 +17,26 @@
 package chapter2;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.ToDoubleBiFunction;
 import java.util.function.ToDoubleFunction;
 
 public class GenericSearch {
+	private static final int BATCH = 8; // keys searched together by the batched binaryContains
 
 	public static <T extends Comparable<T>> boolean linearContains(List<T> list, T key) {
 		for (T item : list) {
@@ -59,11 +65,229 @@ public class GenericSearch {
 		return false;
 	}
 
+	// Primitive versions of the searches above, with no boxing and no compareTo
+	// The double versions compare with == and <, so NaN is never found
+	public static boolean linearContains(int[] array, int key) {
+		for (int item : array) {
+			if (item == key) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Branchless binary search of a sorted array: the loop always runs log2(n) times
+	// and the select in its body compiles to a conditional move instead of a
+	// hard-to-predict branch
+	public static boolean binaryContains(int[] sorted, int key) {
+		if (sorted.length == 0) {
+			return false;
+		}
+		int base = 0; // the last element <= key is in [base, base + n)
+		for (int n = sorted.length; n > 1; n -= n >>> 1) {
+			int middle = base + (n >>> 1);
+			base = sorted[middle] <= key ? middle : base;
+		}
+		return sorted[base] == key;
+	}
+
+	// Several branchless searches run in lock step, so the memory loads of
+	// BATCH keys are in flight at once instead of one cache miss after another
+	public static boolean[] binaryContains(int[] sorted, int[] keys) {
+		boolean[] found = new boolean[keys.length];
+		if (sorted.length == 0) {
+			return found;
+		}
+		int[] base = new int[BATCH];
+		for (int start = 0; start < keys.length; start += BATCH) {
+			int count = Math.min(BATCH, keys.length - start);
+			Arrays.fill(base, 0);
+			for (int n = sorted.length; n > 1; n -= n >>> 1) {
+				int half = n >>> 1;
+				for (int j = 0; j < count; j++) {
+					int middle = base[j] + half;
+					base[j] = sorted[middle] <= keys[start + j] ? middle : base[j];
+				}
+			}
+			for (int j = 0; j < count; j++) {
+				found[start + j] = sorted[base[j]] == keys[start + j];
+			}
+		}
+		return found;
+	}
+
+	// The Eytzinger (breadth-first heap) order of a sorted array, 1-based with slot 0 unused
+	// The first levels of the implicit tree share a few cache lines, and the two
+	// children of a slot sit side by side
+	public static int[] eytzingerLayout(int[] sorted) {
+		int[] layout = new int[sorted.length + 1];
+		fillEytzinger(sorted, layout, 0, 1);
+		return layout;
+	}
+
+	private static int fillEytzinger(int[] sorted, int[] layout, int next, int k) {
+		if (k < layout.length) {
+			next = fillEytzinger(sorted, layout, next, 2 * k); // in-order walk of the implicit tree
+			layout[k] = sorted[next++];
+			next = fillEytzinger(sorted, layout, next, 2 * k + 1);
+		}
+		return next;
+	}
+
+	public static boolean eytzingerContains(int[] layout, int key) {
+		int k = 1;
+		while (k < layout.length) {
+			k = 2 * k + (layout[k] < key ? 1 : 0);
+		}
+		// undo the trailing right turns plus one left turn to land on the first element >= key
+		k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+		return k != 0 && layout[k] == key;
+	}
+
+	public static boolean linearContains(long[] array, long key) {
+		for (long item : array) {
+			if (item == key) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static boolean binaryContains(long[] sorted, long key) {
+		if (sorted.length == 0) {
+			return false;
+		}
+		int base = 0; // the last element <= key is in [base, base + n)
+		for (int n = sorted.length; n > 1; n -= n >>> 1) {
+			int middle = base + (n >>> 1);
+			base = sorted[middle] <= key ? middle : base;
+		}
+		return sorted[base] == key;
+	}
+
+	public static boolean[] binaryContains(long[] sorted, long[] keys) {
+		boolean[] found = new boolean[keys.length];
+		if (sorted.length == 0) {
+			return found;
+		}
+		int[] base = new int[BATCH];
+		for (int start = 0; start < keys.length; start += BATCH) {
+			int count = Math.min(BATCH, keys.length - start);
+			Arrays.fill(base, 0);
+			for (int n = sorted.length; n > 1; n -= n >>> 1) {
+				int half = n >>> 1;
+				for (int j = 0; j < count; j++) {
+					int middle = base[j] + half;
+					base[j] = sorted[middle] <= keys[start + j] ? middle : base[j];
+				}
+			}
+			for (int j = 0; j < count; j++) {
+				found[start + j] = sorted[base[j]] == keys[start + j];
+			}
+		}
+		return found;
+	}
+
+	public static long[] eytzingerLayout(long[] sorted) {
+		long[] layout = new long[sorted.length + 1];
+		fillEytzinger(sorted, layout, 0, 1);
+		return layout;
+	}
+
+	private static int fillEytzinger(long[] sorted, long[] layout, int next, int k) {
+		if (k < layout.length) {
+			next = fillEytzinger(sorted, layout, next, 2 * k); // in-order walk of the implicit tree
+			layout[k] = sorted[next++];
+			next = fillEytzinger(sorted, layout, next, 2 * k + 1);
+		}
+		return next;
+	}
+
+	public static boolean eytzingerContains(long[] layout, long key) {
+		int k = 1;
+		while (k < layout.length) {
+			k = 2 * k + (layout[k] < key ? 1 : 0);
+		}
+		// undo the trailing right turns plus one left turn to land on the first element >= key
+		k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+		return k != 0 && layout[k] == key;
+	}
+
+	public static boolean linearContains(double[] array, double key) {
+		for (double item : array) {
+			if (item == key) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static boolean binaryContains(double[] sorted, double key) {
+		if (sorted.length == 0) {
+			return false;
+		}
+		int base = 0; // the last element <= key is in [base, base + n)
+		for (int n = sorted.length; n > 1; n -= n >>> 1) {
+			int middle = base + (n >>> 1);
+			base = sorted[middle] <= key ? middle : base;
+		}
+		return sorted[base] == key;
+	}
+
+	public static boolean[] binaryContains(double[] sorted, double[] keys) {
+		boolean[] found = new boolean[keys.length];
+		if (sorted.length == 0) {
+			return found;
+		}
+		int[] base = new int[BATCH];
+		for (int start = 0; start < keys.length; start += BATCH) {
+			int count = Math.min(BATCH, keys.length - start);
+			Arrays.fill(base, 0);
+			for (int n = sorted.length; n > 1; n -= n >>> 1) {
+				int half = n >>> 1;
+				for (int j = 0; j < count; j++) {
+					int middle = base[j] + half;
+					base[j] = sorted[middle] <= keys[start + j] ? middle : base[j];
+				}
+			}
+			for (int j = 0; j < count; j++) {
+				found[start + j] = sorted[base[j]] == keys[start + j];
+			}
+		}
+		return found;
+	}
+
+	public static double[] eytzingerLayout(double[] sorted) {
+		double[] layout = new double[sorted.length + 1];
+		fillEytzinger(sorted, layout, 0, 1);
+		return layout;
+	}
+
+	private static int fillEytzinger(double[] sorted, double[] layout, int next, int k) {
+		if (k < layout.length) {
+			next = fillEytzinger(sorted, layout, next, 2 * k); // in-order walk of the implicit tree
+			layout[k] = sorted[next++];
+			next = fillEytzinger(sorted, layout, next, 2 * k + 1);
+		}
+		return next;
+	}
+
+	public static boolean eytzingerContains(double[] layout, double key) {
+		int k = 1;
+		while (k < layout.length) {
+			k = 2 * k + (layout[k] < key ? 1 : 0);
+		}
+		// undo the trailing right turns plus one left turn to land on the first element >= key
+		k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+		return k != 0 && layout[k] == key;
+	}
+
 	public static class Node<T> implements Comparable<Node<T>> {
 		final T state;
 		Node<T> parent;
 		double cost;
 		double heuristic;
+		int heapIndex = -1; // position in an AddressableQueue, -1 if not in one
 
 		// for dfs and bfs we won't use cost and heuristic
 		Node(T state, Node<T> parent) {
@@ -81,39 +305,149 @@ public class GenericSearch {
 
 		@Override
 		public int compareTo(Node<T> other) {
-			Double mine = cost + heuristic;
-			Double theirs = other.cost + other.heuristic;
-			return mine.compareTo(theirs);
+			return Double.compare(cost + heuristic, other.cost + other.heuristic);
+		}
+	}
+
+	// A binary min-heap of Nodes that tracks where each Node sits,
+	// so a Node already in the queue can have its priority lowered in place
+	static final class AddressableQueue<T> {
+		private final ArrayList<Node<T>> heap = new ArrayList<>();
+
+		boolean isEmpty() {
+			return heap.isEmpty();
+		}
+
+		int size() {
+			return heap.size();
+		}
+
+		void offer(Node<T> node) {
+			node.heapIndex = heap.size();
+			heap.add(node);
+			siftUp(node.heapIndex);
+		}
+
+		Node<T> peek() {
+			return heap.get(0);
+		}
+
+		void clear() {
+			heap.clear();
+		}
+
+		// the queued Nodes in no particular order
+		List<Node<T>> toList() {
+			return new ArrayList<>(heap);
+		}
+
+		Node<T> poll() {
+			Node<T> top = heap.get(0);
+			Node<T> last = heap.remove(heap.size() - 1);
+			if (last != top) {
+				heap.set(0, last);
+				last.heapIndex = 0;
+				siftDown(0);
+			}
+			top.heapIndex = -1;
+			return top;
+		}
+
+		// call after lowering node.cost or node.heuristic
+		void decreaseKey(Node<T> node) {
+			siftUp(node.heapIndex);
+		}
+
+		private void siftUp(int i) {
+			Node<T> node = heap.get(i);
+			while (i > 0) {
+				int parent = (i - 1) / 2;
+				Node<T> parentNode = heap.get(parent);
+				if (parentNode.compareTo(node) <= 0) {
+					break;
+				}
+				place(parentNode, i);
+				i = parent;
+			}
+			place(node, i);
+		}
+
+		private void siftDown(int i) {
+			Node<T> node = heap.get(i);
+			int size = heap.size();
+			while (2 * i + 1 < size) {
+				int child = 2 * i + 1;
+				if (child + 1 < size && heap.get(child + 1).compareTo(heap.get(child)) < 0) {
+					child++;
+				}
+				Node<T> childNode = heap.get(child);
+				if (node.compareTo(childNode) <= 0) {
+					break;
+				}
+				place(childNode, i);
+				i = child;
+			}
+			place(node, i);
+		}
+
+		private void place(Node<T> node, int i) {
+			heap.set(i, node);
+			node.heapIndex = i;
 		}
 	}
 
 	public static <T> Node<T> dfs(T initial, Predicate<T> goalTest,
 			Function<T, List<T>> successors) {
-		// frontier is where we've yet to go
-		Stack<Node<T>> frontier = new Stack<>();
-		frontier.push(new Node<>(initial, null));
-		// explored is where we've been
-		Set<T> explored = new HashSet<>();
-		explored.add(initial);
+		return dfs(initial, goalTest, successors, new SearchContext<>());
+	}
 
-		// keep going while there is more to explore
-		while (!frontier.isEmpty()) {
-			Node<T> currentNode = frontier.pop();
-			T currentState = currentNode.state;
-			// if we found the goal, we're done
-			if (goalTest.test(currentState)) {
-				return currentNode;
+	// Same as above but reuses the structures in *context* instead of allocating new ones
+	public static <T> Node<T> dfs(T initial, Predicate<T> goalTest,
+			Function<T, List<T>> successors, SearchContext<T> context) {
+		context.begin();
+		try {
+			// frontier is where we've yet to go
+			Deque<Node<T>> frontier = context.deque;
+			Node<T> initialNode = new Node<>(initial, null);
+			frontier.push(initialNode);
+			// explored is where we've been
+			context.reach(initial, initialNode);
+			SearchStats stats = context.stats;
+			if (stats != null) {
+				stats.explored();
 			}
-			// check where we can go next and haven't explored
-			for (T child : successors.apply(currentState)) {
-				if (explored.contains(child)) {
-					continue; // skip children we already explored
+
+			// keep going while there is more to explore
+			while (!frontier.isEmpty()) {
+				Node<T> currentNode = frontier.pop();
+				T currentState = currentNode.state;
+				// if we found the goal, we're done
+				if (goalTest.test(currentState)) {
+					return currentNode;
+				}
+				// check where we can go next and haven't explored
+				for (T child : expand(currentState, successors, stats)) {
+					if (context.reached(child) != null) {
+						if (stats != null) {
+							stats.duplicate();
+						}
+						continue; // skip children we already explored
+					}
+					Node<T> childNode = new Node<>(child, currentNode);
+					context.reach(child, childNode);
+					frontier.push(childNode);
+					if (stats != null) {
+						stats.explored();
+					}
+				}
+				if (stats != null) {
+					stats.frontier(frontier.size());
 				}
-				explored.add(child);
-				frontier.push(new Node<>(child, currentNode));
 			}
+			return null; // went through everything and never found goal
+		} finally {
+			context.end();
 		}
-		return null; // went through everything and never found goal
 	}
 
 	public static <T> List<T> nodeToPath(Node<T> node) {
@@ -129,61 +463,470 @@ public class GenericSearch {
 
 	public static <T> Node<T> bfs(T initial, Predicate<T> goalTest,
 			Function<T, List<T>> successors) {
-		// frontier is where we've yet to go
-		Queue<Node<T>> frontier = new LinkedList<>();
-		frontier.offer(new Node<>(initial, null));
-		// explored is where we've been
-		Set<T> explored = new HashSet<>();
-		explored.add(initial);
+		return bfs(initial, goalTest, successors, new SearchContext<>());
+	}
 
-		// keep going while there is more to explore
-		while (!frontier.isEmpty()) {
-			Node<T> currentNode = frontier.poll();
-			T currentState = currentNode.state;
-			// if we found the goal, we're done
-			if (goalTest.test(currentState)) {
-				return currentNode;
+	// Same as above but reuses the structures in *context* instead of allocating new ones
+	public static <T> Node<T> bfs(T initial, Predicate<T> goalTest,
+			Function<T, List<T>> successors, SearchContext<T> context) {
+		context.begin();
+		try {
+			// frontier is where we've yet to go
+			Queue<Node<T>> frontier = context.deque;
+			Node<T> initialNode = new Node<>(initial, null);
+			frontier.offer(initialNode);
+			// explored is where we've been
+			context.reach(initial, initialNode);
+			SearchStats stats = context.stats;
+			if (stats != null) {
+				stats.explored();
 			}
-			// check where we can go next and haven't explored
-			for (T child : successors.apply(currentState)) {
-				if (explored.contains(child)) {
-					continue; // skip children we already explored
+
+			// keep going while there is more to explore
+			while (!frontier.isEmpty()) {
+				Node<T> currentNode = frontier.poll();
+				T currentState = currentNode.state;
+				// if we found the goal, we're done
+				if (goalTest.test(currentState)) {
+					return currentNode;
+				}
+				// check where we can go next and haven't explored
+				for (T child : expand(currentState, successors, stats)) {
+					if (context.reached(child) != null) {
+						if (stats != null) {
+							stats.duplicate();
+						}
+						continue; // skip children we already explored
+					}
+					Node<T> childNode = new Node<>(child, currentNode);
+					context.reach(child, childNode);
+					frontier.offer(childNode);
+					if (stats != null) {
+						stats.explored();
+					}
+				}
+				if (stats != null) {
+					stats.frontier(frontier.size());
 				}
-				explored.add(child);
-				frontier.offer(new Node<>(child, currentNode));
 			}
+			return null; // went through everything and never found goal
+		} finally {
+			context.end();
 		}
-		return null; // went through everything and never found goal
 	}
 
 	public static <T> Node<T> astar(T initial, Predicate<T> goalTest,
 			Function<T, List<T>> successors, ToDoubleFunction<T> heuristic) {
-		// frontier is where we've yet to go
-		PriorityQueue<Node<T>> frontier = new PriorityQueue<>();
-		frontier.offer(new Node<>(initial, null, 0.0, heuristic.applyAsDouble(initial)));
-		// explored is where we've been
-		Map<T, Double> explored = new HashMap<>();
-		explored.put(initial, 0.0);
-		// keep going while there is more to explore
-		while (!frontier.isEmpty()) {
-			Node<T> currentNode = frontier.poll();
+		// 1 here assumes a grid, use the overload with a cost function for weighted spaces
+		return astar(initial, goalTest, successors, heuristic, (from, to) -> 1.0);
+	}
+
+	public static <T> Node<T> astar(T initial, Predicate<T> goalTest,
+			Function<T, List<T>> successors, ToDoubleFunction<T> heuristic,
+			ToDoubleBiFunction<T, T> cost) {
+		return astar(initial, goalTest, successors, heuristic, cost, new SearchContext<>());
+	}
+
+	// Same as above but reuses the structures in *context* instead of allocating new ones
+	public static <T> Node<T> astar(T initial, Predicate<T> goalTest,
+			Function<T, List<T>> successors, ToDoubleFunction<T> heuristic,
+			ToDoubleBiFunction<T, T> cost, SearchContext<T> context) {
+		context.begin();
+		try {
+			// frontier is where we've yet to go
+			AddressableQueue<T> frontier = context.queue;
+			SearchStats stats = context.stats;
+			Node<T> initialNode = new Node<>(initial, null, 0.0, estimate(initial, heuristic, stats));
+			frontier.offer(initialNode);
+			// explored is the best Node we have found for every state
+			context.reach(initial, initialNode);
+			if (stats != null) {
+				stats.explored();
+			}
+			// keep going while there is more to explore
+			while (!frontier.isEmpty()) {
+				Node<T> currentNode;
+				if (stats == null) {
+					currentNode = frontier.poll();
+				} else {
+					long start = System.nanoTime();
+					currentNode = frontier.poll();
+					stats.queue(System.nanoTime() - start);
+				}
+				T currentState = currentNode.state;
+				// skip entries superseded by a cheaper Node for the same state
+				if (context.reached(currentState) != currentNode) {
+					continue;
+				}
+				// if we found the goal, we're done
+				if (goalTest.test(currentState)) {
+					return currentNode;
+				}
+				// check where we can go next and haven't explored
+				for (T child : expand(currentState, successors, stats)) {
+					double newCost = currentNode.cost + cost.applyAsDouble(currentState, child);
+					if (relax(context, currentNode, child, newCost, heuristic) == null && stats != null) {
+						stats.duplicate();
+					}
+				}
+				if (stats != null) {
+					stats.frontier(frontier.size());
+				}
+			}
+
+			return null; // went through everything and never found goal
+		} finally {
+			context.end();
+		}
+	}
+
+	// Record that *child* can be reached from *parent* for *newCost*
+	// Returns the child's Node if this was an improvement, otherwise null
+	private static <T> Node<T> relax(SearchContext<T> context, Node<T> parent, T child,
+			double newCost, ToDoubleFunction<T> heuristic) {
+		SearchStats stats = context.stats;
+		Node<T> childNode = context.reached(child);
+		if (childNode == null) {
+			childNode = new Node<>(child, parent, newCost, estimate(child, heuristic, stats));
+			context.reach(child, childNode);
+			if (stats != null) {
+				stats.explored();
+			}
+		} else if (childNode.cost > newCost) {
+			if (childNode.heapIndex >= 0) { // still in the frontier, decrease its key
+				childNode.cost = newCost;
+				childNode.parent = parent;
+			} else { // already expanded, reopen with a fresh Node
+				childNode = new Node<>(child, parent, newCost, childNode.heuristic);
+				context.reach(child, childNode);
+			}
+		} else {
+			return null; // no better than what we had
+		}
+		enqueue(context.queue, childNode, stats);
+		return childNode;
+	}
+
+	// offer *node* or, if it is already queued, move it up to its lowered priority
+	private static <T> void enqueue(AddressableQueue<T> frontier, Node<T> node, SearchStats stats) {
+		long start = stats == null ? 0 : System.nanoTime();
+		if (node.heapIndex >= 0) {
+			frontier.decreaseKey(node);
+		} else {
+			frontier.offer(node);
+		}
+		if (stats != null) {
+			stats.queue(System.nanoTime() - start);
+		}
+	}
+
+	// successors.apply(state), recording the expansion when instrumented
+	private static <T> List<T> expand(T state, Function<T, List<T>> successors, SearchStats stats) {
+		if (stats == null) {
+			return successors.apply(state);
+		}
+		long start = System.nanoTime();
+		List<T> children = successors.apply(state);
+		stats.expanded(children.size(), System.nanoTime() - start);
+		return children;
+	}
+
+	// heuristic.applyAsDouble(state), timed when instrumented
+	private static <T> double estimate(T state, ToDoubleFunction<T> heuristic, SearchStats stats) {
+		if (stats == null) {
+			return heuristic.applyAsDouble(state);
+		}
+		long start = System.nanoTime();
+		double h = heuristic.applyAsDouble(state);
+		stats.heuristic(System.nanoTime() - start);
+		return h;
+	}
+
+	// Searches forward from *initial* and backward from *goal* one layer at a time
+	// until the two meet; *predecessors* must return the states that lead into a state
+	public static <T> Node<T> bidirectionalBfs(T initial, T goal,
+			Function<T, List<T>> successors, Function<T, List<T>> predecessors) {
+		// each side remembers how it reached every state, cost holds the depth
+		Map<T, Node<T>> forwardExplored = new HashMap<>();
+		Map<T, Node<T>> backwardExplored = new HashMap<>();
+		Node<T> initialNode = new Node<>(initial, null, 0.0, 0.0);
+		Node<T> goalNode = new Node<>(goal, null, 0.0, 0.0);
+		if (initial.equals(goal)) {
+			return initialNode;
+		}
+		forwardExplored.put(initial, initialNode);
+		backwardExplored.put(goal, goalNode);
+		List<Node<T>> forwardFrontier = new ArrayList<>(List.of(initialNode));
+		List<Node<T>> backwardFrontier = new ArrayList<>(List.of(goalNode));
+
+		while (!forwardFrontier.isEmpty() && !backwardFrontier.isEmpty()) {
+			// grow the smaller side, that keeps both balls small
+			boolean forward = forwardFrontier.size() <= backwardFrontier.size();
+			List<Node<T>> layer = forward ? forwardFrontier : backwardFrontier;
+			Map<T, Node<T>> mine = forward ? forwardExplored : backwardExplored;
+			Map<T, Node<T>> theirs = forward ? backwardExplored : forwardExplored;
+			Function<T, List<T>> neighbors = forward ? successors : predecessors;
+			List<Node<T>> nextLayer = new ArrayList<>();
+			Node<T> bestMine = null, bestTheirs = null;
+			for (Node<T> node : layer) {
+				for (T child : neighbors.apply(node.state)) {
+					if (mine.containsKey(child)) {
+						continue; // skip children we already explored
+					}
+					Node<T> childNode = new Node<>(child, node, node.cost + 1, 0.0);
+					mine.put(child, childNode);
+					nextLayer.add(childNode);
+					// the frontiers met, but finish the layer in case a shorter meeting follows
+					Node<T> other = theirs.get(child);
+					if (other != null && (bestMine == null
+							|| childNode.cost + other.cost < bestMine.cost + bestTheirs.cost)) {
+						bestMine = childNode;
+						bestTheirs = other;
+					}
+				}
+			}
+			if (bestMine != null) {
+				return forward ? joinPaths(bestMine, bestTheirs) : joinPaths(bestTheirs, bestMine);
+			}
+			if (forward) {
+				forwardFrontier = nextLayer;
+			} else {
+				backwardFrontier = nextLayer;
+			}
+		}
+		return null; // one side ran out of states, so there is no path
+	}
+
+	// *toGoal* estimates the cost from a state to *goal*, *toInitial* the cost from *initial* to it
+	// both should be consistent for the result to be optimal
+	public static <T> Node<T> bidirectionalAstar(T initial, T goal,
+			Function<T, List<T>> successors, Function<T, List<T>> predecessors,
+			ToDoubleFunction<T> toGoal, ToDoubleFunction<T> toInitial,
+			ToDoubleBiFunction<T, T> cost) {
+		Node<T> initialNode = new Node<>(initial, null, 0.0, toGoal.applyAsDouble(initial));
+		Node<T> goalNode = new Node<>(goal, null, 0.0, toInitial.applyAsDouble(goal));
+		if (initial.equals(goal)) {
+			return initialNode;
+		}
+		// each direction has its own frontier and explored Nodes
+		SearchContext<T> forwardContext = new SearchContext<>();
+		SearchContext<T> backwardContext = new SearchContext<>();
+		AddressableQueue<T> forwardFrontier = forwardContext.queue;
+		AddressableQueue<T> backwardFrontier = backwardContext.queue;
+		forwardFrontier.offer(initialNode);
+		backwardFrontier.offer(goalNode);
+		forwardContext.reach(initial, initialNode);
+		backwardContext.reach(goal, goalNode);
+		// cheapest complete path seen so far, through the state both Nodes share
+		double bestCost = Double.POSITIVE_INFINITY;
+		Node<T> bestForward = null, bestBackward = null;
+
+		while (!forwardFrontier.isEmpty() && !backwardFrontier.isEmpty()) {
+			// once either side's cheapest estimate reaches bestCost nothing cheaper remains
+			if (f(forwardFrontier.peek()) >= bestCost || f(backwardFrontier.peek()) >= bestCost) {
+				break;
+			}
+			boolean forward = forwardFrontier.size() <= backwardFrontier.size();
+			SearchContext<T> mine = forward ? forwardContext : backwardContext;
+			SearchContext<T> theirs = forward ? backwardContext : forwardContext;
+			Node<T> currentNode = mine.queue.poll();
 			T currentState = currentNode.state;
-			// if we found the goal, we're done
-			if (goalTest.test(currentState)) {
-				return currentNode;
+			if (mine.reached(currentState) != currentNode) {
+				continue; // superseded by a cheaper Node
 			}
-			// check where we can go next and haven't explored
-			for (T child : successors.apply(currentState)) {
-				// 1 here assumes a grid, need a cost function for more sophisticated apps
-				double newCost = currentNode.cost + 1;
-				if (!explored.containsKey(child) || explored.get(child) > newCost) {
-					explored.put(child, newCost);
-					frontier.offer(new Node<>(child, currentNode, newCost, heuristic.applyAsDouble(child)));
+			for (T child : (forward ? successors : predecessors).apply(currentState)) {
+				double newCost = currentNode.cost + (forward
+						? cost.applyAsDouble(currentState, child)
+						: cost.applyAsDouble(child, currentState));
+				Node<T> childNode = relax(mine, currentNode, child, newCost, forward ? toGoal : toInitial);
+				Node<T> other = theirs.reached(child);
+				if (childNode != null && other != null && childNode.cost + other.cost < bestCost) {
+					bestCost = childNode.cost + other.cost;
+					bestForward = forward ? childNode : other;
+					bestBackward = forward ? other : childNode;
 				}
 			}
 		}
+		return bestForward == null ? null : joinPaths(bestForward, bestBackward);
+	}
+
+	private static <T> double f(Node<T> node) {
+		return node.cost + node.heuristic;
+	}
+
+	// *forward* and *backward* hold the same state; the result continues *forward*
+	// along *backward*'s parents so that it ends at the backward search's root
+	private static <T> Node<T> joinPaths(Node<T> forward, Node<T> backward) {
+		Node<T> joined = forward;
+		for (Node<T> b = backward; b.parent != null; b = b.parent) {
+			joined = new Node<>(b.parent.state, joined, joined.cost + (b.cost - b.parent.cost), 0.0);
+		}
+		return joined;
+	}
+
+	// Level-synchronous breadth-first search that expands each layer across *pool*
+	// *goalTest* and *successors* are called from many threads at once
+	public static <T> Node<T> parallelBfs(T initial, Predicate<T> goalTest,
+			Function<T, List<T>> successors, ForkJoinPool pool) {
+		Node<T> initialNode = new Node<>(initial, null);
+		if (goalTest.test(initial)) {
+			return initialNode;
+		}
+		// explored is where we've been, shared by every worker
+		Set<T> explored = ConcurrentHashMap.newKeySet();
+		explored.add(initial);
+		AtomicReference<Node<T>> found = new AtomicReference<>();
+		List<Node<T>> layer = List.of(initialNode);
+		// every goal in a layer is equally shallow, so whichever is found first is optimal
+		while (!layer.isEmpty() && found.get() == null) {
+			layer = pool.invoke(new LayerTask<>(layer, 0, layer.size(), goalTest, successors, explored, found));
+		}
+		return found.get();
+	}
 
-		return null; // went through everything and never found goal
+	public static <T> Node<T> parallelBfs(T initial, Predicate<T> goalTest,
+			Function<T, List<T>> successors) {
+		return parallelBfs(initial, goalTest, successors, ForkJoinPool.commonPool());
+	}
+
+	// Expands layer[from, to) and returns the next layer's Nodes
+	private static final class LayerTask<T> extends RecursiveTask<List<Node<T>>> {
+		private static final long serialVersionUID = 1L;
+		private static final int THRESHOLD = 64; // below this many Nodes just do it here
+		private final List<Node<T>> layer;
+		private final int from, to;
+		private final Predicate<T> goalTest;
+		private final Function<T, List<T>> successors;
+		private final Set<T> explored;
+		private final AtomicReference<Node<T>> found;
+
+		LayerTask(List<Node<T>> layer, int from, int to, Predicate<T> goalTest,
+				Function<T, List<T>> successors, Set<T> explored, AtomicReference<Node<T>> found) {
+			this.layer = layer;
+			this.from = from;
+			this.to = to;
+			this.goalTest = goalTest;
+			this.successors = successors;
+			this.explored = explored;
+			this.found = found;
+		}
+
+		@Override
+		protected List<Node<T>> compute() {
+			if (to - from > THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				LayerTask<T> left = new LayerTask<>(layer, from, middle, goalTest, successors, explored, found);
+				left.fork();
+				List<Node<T>> next = new LayerTask<>(layer, middle, to, goalTest, successors, explored, found)
+						.compute();
+				List<Node<T>> leftNext = left.join();
+				leftNext.addAll(next);
+				return leftNext;
+			}
+			List<Node<T>> next = new ArrayList<>();
+			for (int i = from; i < to && found.get() == null; i++) {
+				Node<T> node = layer.get(i);
+				for (T child : successors.apply(node.state)) {
+					if (!explored.add(child)) {
+						continue; // another worker (or we) got here first
+					}
+					Node<T> childNode = new Node<>(child, node);
+					if (goalTest.test(child)) {
+						found.compareAndSet(null, childNode);
+						break;
+					}
+					next.add(childNode);
+				}
+			}
+			return next;
+		}
+	}
+
+	// Iterative-deepening A*: repeated depth-first searches with a growing f bound
+	// Memory is proportional to the path length instead of the number of states
+	public static <T> Node<T> idastar(T initial, Predicate<T> goalTest,
+			Function<T, List<T>> successors, ToDoubleFunction<T> heuristic,
+			ToDoubleBiFunction<T, T> cost) {
+		return idastar(initial, goalTest, successors, heuristic, cost, 0);
+	}
+
+	// Like idastar() but also retains up to *maxRetained* states with the cheapest cost
+	// they were reached for in the current iteration, so duplicate paths get pruned
+	// A bigger budget means fewer re-expansions, a budget of 0 is plain IDA*
+	public static <T> Node<T> idastar(T initial, Predicate<T> goalTest,
+			Function<T, List<T>> successors, ToDoubleFunction<T> heuristic,
+			ToDoubleBiFunction<T, T> cost, int maxRetained) {
+		IdaSearch<T> search = new IdaSearch<>(goalTest, successors, heuristic, cost, maxRetained);
+		Node<T> root = new Node<>(initial, null, 0.0, heuristic.applyAsDouble(initial));
+		double bound = root.cost + root.heuristic;
+		while (bound < Double.POSITIVE_INFINITY) {
+			search.nextBound = Double.POSITIVE_INFINITY;
+			search.retained.clear();
+			Node<T> solution = search.search(root, bound);
+			if (solution != null) {
+				return solution;
+			}
+			bound = search.nextBound; // smallest f that exceeded the old bound
+		}
+		return null; // every path was a dead end
+	}
+
+	private static final class IdaSearch<T> {
+		private final Predicate<T> goalTest;
+		private final Function<T, List<T>> successors;
+		private final ToDoubleFunction<T> heuristic;
+		private final ToDoubleBiFunction<T, T> cost;
+		// states on the current path, to avoid walking in circles
+		private final Set<T> onPath = new HashSet<>();
+		// least recently used states fall out once the budget is full
+		private final Map<T, Double> retained;
+		private double nextBound;
+
+		IdaSearch(Predicate<T> goalTest, Function<T, List<T>> successors,
+				ToDoubleFunction<T> heuristic, ToDoubleBiFunction<T, T> cost, int maxRetained) {
+			this.goalTest = goalTest;
+			this.successors = successors;
+			this.heuristic = heuristic;
+			this.cost = cost;
+			retained = new LinkedHashMap<>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<T, Double> eldest) {
+					return size() > maxRetained;
+				}
+			};
+		}
+
+		Node<T> search(Node<T> node, double bound) {
+			double f = node.cost + node.heuristic;
+			if (f > bound) {
+				nextBound = Math.min(nextBound, f);
+				return null;
+			}
+			if (goalTest.test(node.state)) {
+				return node;
+			}
+			onPath.add(node.state);
+			for (T child : successors.apply(node.state)) {
+				if (onPath.contains(child)) {
+					continue;
+				}
+				double newCost = node.cost + cost.applyAsDouble(node.state, child);
+				Double seen = retained.get(child);
+				if (seen != null && seen <= newCost) {
+					continue; // already searched from here at least as cheaply this iteration
+				}
+				retained.put(child, newCost);
+				Node<T> found = search(new Node<>(child, node, newCost, heuristic.applyAsDouble(child)), bound);
+				if (found != null) {
+					onPath.remove(node.state);
+					return found;
+				}
+			}
+			onPath.remove(node.state);
+			return null;
+		}
 	}
 
 	public static void main(String[] args) {
@@ -0,0 +1,414 @@
+// HierarchicalMaze.java
+// From Classic Computer Science Problems in Java Chapter 2
+// Copyright 2020 David Kopec
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package chapter2;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import chapter2.GenericSearch.Node;
+import chapter2.Maze.MazeLocation;
+
+// Hierarchical path-finding (HPA*) over a Maze
+// The grid is cut into square clusters. Wherever two neighboring clusters share open
+// border cells we place an entrance, and within each cluster we precompute the distance
+// between every pair of entrances. A query searches that small abstract graph and then
+// fills in the cells between consecutive entrances. Paths are near-optimal, not optimal.
+public class HierarchicalMaze {
+	private static final int MAX_SINGLE_ENTRANCE = 6; // longer open runs get an entrance at each end
+	private static final int[] ROW_MOVES = { 1, -1, 0, 0 };
+	private static final int[] COLUMN_MOVES = { 0, 0, 1, -1 };
+	private final Maze maze;
+	private final int clusterSize;
+	private final int rows, columns;
+	private final int clusterRows, clusterColumns;
+	// transitions[2 * cluster] cross the cluster's right border, [2 * cluster + 1] its bottom border
+	// each transition is a pair of cell indices, one on either side
+	private final List<List<int[]>> transitions;
+	// for every cluster, entrance -> (entrance -> distance within the cluster)
+	private final List<Map<Integer, Map<Integer, Double>>> intraEdges;
+
+	public HierarchicalMaze(Maze maze, int clusterSize) {
+		this.maze = maze;
+		this.clusterSize = clusterSize;
+		rows = maze.getRows();
+		columns = maze.getColumns();
+		clusterRows = (rows + clusterSize - 1) / clusterSize;
+		clusterColumns = (columns + clusterSize - 1) / clusterSize;
+		int clusters = clusterRows * clusterColumns;
+		transitions = new ArrayList<>(2 * clusters);
+		intraEdges = new ArrayList<>(clusters);
+		for (int c = 0; c < clusters; c++) {
+			transitions.add(new ArrayList<>());
+			transitions.add(new ArrayList<>());
+			intraEdges.add(new HashMap<>());
+		}
+		for (int c = 0; c < clusters; c++) {
+			findTransitions(c);
+		}
+		for (int c = 0; c < clusters; c++) {
+			connectEntrances(c);
+		}
+	}
+
+	// Call after changing cells of the Maze (for example with Maze.setBlocked())
+	// Only the clusters holding a changed cell and their direct neighbors are rebuilt
+	public void update(Collection<MazeLocation> changed) {
+		Set<Integer> dirty = new HashSet<>();
+		for (MazeLocation ml : changed) {
+			dirty.add(clusterOf(ml.row, ml.column));
+		}
+		Set<Integer> reconnect = new HashSet<>();
+		for (int c : dirty) {
+			// the borders to the left and above belong to the neighbor's transition lists
+			findTransitions(c);
+			reconnect.add(c);
+			for (int neighbor : neighborsOf(c)) {
+				if (neighbor == c - 1 || neighbor == c - clusterColumns) {
+					findTransitions(neighbor);
+				}
+				reconnect.add(neighbor);
+			}
+		}
+		for (int c : reconnect) {
+			connectEntrances(c);
+		}
+	}
+
+	// A path from *start* to *goal* ready for Maze.mark(), or null if there is none
+	public List<MazeLocation> findPath(MazeLocation start, MazeLocation goal) {
+		int startIndex = start.row * columns + start.column;
+		int goalIndex = goal.row * columns + goal.column;
+		if (!maze.isOpen(start.row, start.column) || !maze.isOpen(goal.row, goal.column)) {
+			return null;
+		}
+		// temporarily wire start and goal to the entrances of their clusters
+		Map<Integer, Map<Integer, Double>> queryEdges = new HashMap<>();
+		int startCluster = clusterOf(start.row, start.column);
+		int goalCluster = clusterOf(goal.row, goal.column);
+		linkToEntrances(startIndex, startCluster, queryEdges);
+		linkToEntrances(goalIndex, goalCluster, queryEdges);
+		if (startCluster == goalCluster) {
+			double direct = distancesWithin(startCluster, startIndex)[localIndex(startCluster, goalIndex)];
+			if (direct >= 0) {
+				addEdge(queryEdges, startIndex, goalIndex, direct);
+			}
+		}
+
+		Node<Integer> solution = GenericSearch.astar(startIndex, index -> index == goalIndex,
+				index -> abstractSuccessors(index, queryEdges),
+				index -> Math.abs(index / columns - goal.row) + Math.abs(index % columns - goal.column),
+				(from, to) -> abstractCost(from, to, queryEdges));
+		if (solution == null) {
+			return null;
+		}
+		// refine each abstract step into the cells it stands for
+		List<Integer> abstractPath = GenericSearch.nodeToPath(solution);
+		List<MazeLocation> path = new ArrayList<>();
+		path.add(start);
+		for (int i = 1; i < abstractPath.size(); i++) {
+			int from = abstractPath.get(i - 1);
+			int to = abstractPath.get(i);
+			int cluster = clusterOf(from / columns, from % columns);
+			if (cluster != clusterOf(to / columns, to % columns)) { // a single step across a border
+				path.add(new MazeLocation(to / columns, to % columns));
+			} else {
+				List<MazeLocation> segment = pathWithin(cluster, from, to);
+				path.addAll(segment.subList(1, segment.size()));
+			}
+		}
+		return path;
+	}
+
+	// number of entrance cells in the abstract graph
+	public int entranceCount() {
+		int count = 0;
+		for (Map<Integer, Map<Integer, Double>> cluster : intraEdges) {
+			count += cluster.size();
+		}
+		return count;
+	}
+
+	private List<Integer> abstractSuccessors(int index, Map<Integer, Map<Integer, Double>> queryEdges) {
+		int cluster = clusterOf(index / columns, index % columns);
+		List<Integer> successors = new ArrayList<>(intraEdges.get(cluster)
+				.getOrDefault(index, Map.of()).keySet());
+		successors.addAll(queryEdges.getOrDefault(index, Map.of()).keySet());
+		for (int border : bordersOf(cluster)) {
+			for (int[] transition : transitions.get(border)) {
+				if (transition[0] == index) {
+					successors.add(transition[1]);
+				} else if (transition[1] == index) {
+					successors.add(transition[0]);
+				}
+			}
+		}
+		return successors;
+	}
+
+	private double abstractCost(int from, int to, Map<Integer, Map<Integer, Double>> queryEdges) {
+		Double cost = queryEdges.getOrDefault(from, Map.of()).get(to);
+		if (cost == null) {
+			cost = intraEdges.get(clusterOf(from / columns, from % columns))
+					.getOrDefault(from, Map.of()).get(to);
+		}
+		return cost == null ? 1.0 : cost; // otherwise it is a transition between clusters
+	}
+
+	private void linkToEntrances(int index, int cluster, Map<Integer, Map<Integer, Double>> queryEdges) {
+		double[] distances = distancesWithin(cluster, index);
+		for (int entrance : intraEdges.get(cluster).keySet()) {
+			double distance = distances[localIndex(cluster, entrance)];
+			if (distance >= 0) {
+				addEdge(queryEdges, index, entrance, distance);
+			}
+		}
+	}
+
+	private static void addEdge(Map<Integer, Map<Integer, Double>> edges, int a, int b, double cost) {
+		edges.computeIfAbsent(a, k -> new HashMap<>()).put(b, cost);
+		edges.computeIfAbsent(b, k -> new HashMap<>()).put(a, cost);
+	}
+
+	// Find the open runs along the right and bottom borders of *cluster*
+	private void findTransitions(int cluster) {
+		int top = cluster / clusterColumns * clusterSize;
+		int left = cluster % clusterColumns * clusterSize;
+		int bottom = Math.min(top + clusterSize, rows) - 1;
+		int right = Math.min(left + clusterSize, columns) - 1;
+		List<int[]> rightBorder = transitions.get(2 * cluster);
+		rightBorder.clear();
+		if (right + 1 < columns) {
+			int runStart = -1;
+			for (int row = top; row <= bottom + 1; row++) {
+				boolean open = row <= bottom && maze.isOpen(row, right) && maze.isOpen(row, right + 1);
+				if (open && runStart < 0) {
+					runStart = row;
+				} else if (!open && runStart >= 0) {
+					for (int r : entranceRows(runStart, row - 1)) {
+						rightBorder.add(new int[] { r * columns + right, r * columns + right + 1 });
+					}
+					runStart = -1;
+				}
+			}
+		}
+		List<int[]> bottomBorder = transitions.get(2 * cluster + 1);
+		bottomBorder.clear();
+		if (bottom + 1 < rows) {
+			int runStart = -1;
+			for (int column = left; column <= right + 1; column++) {
+				boolean open = column <= right && maze.isOpen(bottom, column) && maze.isOpen(bottom + 1, column);
+				if (open && runStart < 0) {
+					runStart = column;
+				} else if (!open && runStart >= 0) {
+					for (int c : entranceRows(runStart, column - 1)) {
+						bottomBorder.add(new int[] { bottom * columns + c, (bottom + 1) * columns + c });
+					}
+					runStart = -1;
+				}
+			}
+		}
+	}
+
+	// where along an open run of border cells [first, last] to put entrances
+	private static int[] entranceRows(int first, int last) {
+		if (last - first + 1 < MAX_SINGLE_ENTRANCE) {
+			return new int[] { (first + last) / 2 };
+		}
+		return new int[] { first, last };
+	}
+
+	// Recompute the distances between every pair of entrances of *cluster*
+	private void connectEntrances(int cluster) {
+		Set<Integer> entrances = new HashSet<>();
+		for (int border : bordersOf(cluster)) {
+			for (int[] transition : transitions.get(border)) {
+				for (int cell : transition) {
+					if (clusterOf(cell / columns, cell % columns) == cluster) {
+						entrances.add(cell);
+					}
+				}
+			}
+		}
+		Map<Integer, Map<Integer, Double>> edges = intraEdges.get(cluster);
+		edges.clear();
+		for (int entrance : entrances) {
+			Map<Integer, Double> reachable = new HashMap<>();
+			double[] distances = distancesWithin(cluster, entrance);
+			for (int other : entrances) {
+				double distance = distances[localIndex(cluster, other)];
+				if (other != entrance && distance >= 0) {
+					reachable.put(other, distance);
+				}
+			}
+			edges.put(entrance, reachable);
+		}
+	}
+
+	// Breadth-first distances from *from* to every cell of *cluster*, -1 if unreachable
+	// without leaving the cluster; indexed by localIndex()
+	private double[] distancesWithin(int cluster, int from) {
+		int top = cluster / clusterColumns * clusterSize;
+		int left = cluster % clusterColumns * clusterSize;
+		int height = Math.min(top + clusterSize, rows) - top;
+		int width = Math.min(left + clusterSize, columns) - left;
+		double[] distances = new double[clusterSize * clusterSize];
+		Arrays.fill(distances, -1);
+		ArrayDeque<Integer> frontier = new ArrayDeque<>();
+		distances[localIndex(cluster, from)] = 0;
+		frontier.offer(from);
+		while (!frontier.isEmpty()) {
+			int current = frontier.poll();
+			int row = current / columns;
+			int column = current % columns;
+			double next = distances[localIndex(cluster, current)] + 1;
+			for (int move = 0; move < 4; move++) {
+				int childRow = row + ROW_MOVES[move];
+				int childColumn = column + COLUMN_MOVES[move];
+				if (childRow < top || childRow >= top + height || childColumn < left || childColumn >= left + width
+						|| !maze.isOpen(childRow, childColumn)) {
+					continue;
+				}
+				int child = childRow * columns + childColumn;
+				if (distances[localIndex(cluster, child)] < 0) {
+					distances[localIndex(cluster, child)] = next;
+					frontier.offer(child);
+				}
+			}
+		}
+		return distances;
+	}
+
+	// Shortest path between two cells of *cluster* that stays inside it
+	private List<MazeLocation> pathWithin(int cluster, int from, int to) {
+		MazeLocation target = new MazeLocation(to / columns, to % columns);
+		Node<MazeLocation> solution = GenericSearch.bfs(new MazeLocation(from / columns, from % columns),
+				target::equals,
+				ml -> {
+					List<MazeLocation> successors = maze.successors(ml);
+					successors.removeIf(s -> clusterOf(s.row, s.column) != cluster);
+					return successors;
+				});
+		return GenericSearch.nodeToPath(solution);
+	}
+
+	private int clusterOf(int row, int column) {
+		return row / clusterSize * clusterColumns + column / clusterSize;
+	}
+
+	private int localIndex(int cluster, int index) {
+		int row = index / columns - cluster / clusterColumns * clusterSize;
+		int column = index % columns - cluster % clusterColumns * clusterSize;
+		return row * clusterSize + column;
+	}
+
+	private List<Integer> neighborsOf(int cluster) {
+		List<Integer> neighbors = new ArrayList<>(4);
+		int clusterRow = cluster / clusterColumns;
+		int clusterColumn = cluster % clusterColumns;
+		if (clusterColumn > 0) {
+			neighbors.add(cluster - 1);
+		}
+		if (clusterColumn + 1 < clusterColumns) {
+			neighbors.add(cluster + 1);
+		}
+		if (clusterRow > 0) {
+			neighbors.add(cluster - clusterColumns);
+		}
+		if (clusterRow + 1 < clusterRows) {
+			neighbors.add(cluster + clusterColumns);
+		}
+		return neighbors;
+	}
+
+	// indices into transitions of all four borders of *cluster*
+	private List<Integer> bordersOf(int cluster) {
+		List<Integer> borders = new ArrayList<>(4);
+		borders.add(2 * cluster);
+		borders.add(2 * cluster + 1);
+		if (cluster % clusterColumns > 0) {
+			borders.add(2 * (cluster - 1));
+		}
+		if (cluster >= clusterColumns) {
+			borders.add(2 * (cluster - clusterColumns) + 1);
+		}
+		return borders;
+	}
+
+	public static void main(String[] args) {
+		int size = 1000;
+		MazeLocation start = new MazeLocation(0, 0);
+		MazeLocation goal = new MazeLocation(size - 1, size - 1);
+		Maze m = new Maze(size, size, start, goal, 0.2);
+		long startTime = System.nanoTime();
+		HierarchicalMaze index = new HierarchicalMaze(m, 20);
+		System.out.printf("Built an index with %d entrances in %d ms%n", index.entranceCount(),
+				(System.nanoTime() - startTime) / 1_000_000);
+
+		// the index pays off over many queries against the same maze
+		Random random = new Random();
+		List<MazeLocation[]> queries = new ArrayList<>();
+		while (queries.size() < 50) {
+			MazeLocation from = new MazeLocation(random.nextInt(size), random.nextInt(size));
+			MazeLocation to = new MazeLocation(random.nextInt(size), random.nextInt(size));
+			if (m.isOpen(from.row, from.column) && m.isOpen(to.row, to.column)) {
+				queries.add(new MazeLocation[] { from, to });
+			}
+		}
+		long astarSteps = 0, hpaSteps = 0;
+		startTime = System.nanoTime();
+		for (MazeLocation[] query : queries) {
+			Node<MazeLocation> solution = GenericSearch.astar(query[0], query[1]::equals, m::successors,
+					ml -> Math.abs(ml.row - query[1].row) + Math.abs(ml.column - query[1].column));
+			astarSteps += solution == null ? 0 : GenericSearch.nodeToPath(solution).size() - 1;
+		}
+		long astarTime = (System.nanoTime() - startTime) / 1_000_000;
+		startTime = System.nanoTime();
+		for (MazeLocation[] query : queries) {
+			List<MazeLocation> path = index.findPath(query[0], query[1]);
+			hpaSteps += path == null ? 0 : path.size() - 1;
+		}
+		long hpaTime = (System.nanoTime() - startTime) / 1_000_000;
+		System.out.printf("A*:  %d queries, %d total steps in %d ms%n", queries.size(), astarSteps, astarTime);
+		System.out.printf("HPA: %d queries, %d total steps in %d ms%n", queries.size(), hpaSteps, hpaTime);
+
+		List<MazeLocation> path = index.findPath(start, goal);
+		if (path == null) {
+			System.out.println("No solution found!");
+			return;
+		}
+		// block part of the path and repair only the clusters that changed
+		List<MazeLocation> changed = new ArrayList<>(path.subList(path.size() / 2, path.size() / 2 + 5));
+		for (MazeLocation ml : changed) {
+			m.setBlocked(ml, true);
+		}
+		startTime = System.nanoTime();
+		index.update(changed);
+		long updateTime = (System.nanoTime() - startTime) / 1_000;
+		List<MazeLocation> repaired = index.findPath(start, goal);
+		System.out.printf("Updated %d cells in %d us, new path: %s%n", changed.size(), updateTime,
+				repaired == null ? "none" : (repaired.size() - 1) + " steps");
+	}
+
+}
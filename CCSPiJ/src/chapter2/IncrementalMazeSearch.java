@@ -0,0 +1,302 @@
+// IncrementalMazeSearch.java
+// From Classic Computer Science Problems in Java Chapter 2
+// Copyright 2020 David Kopec
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package chapter2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import chapter2.GenericSearch.Node;
+import chapter2.Maze.MazeLocation;
+
+// Lifelong Planning A* (LPA*) between a fixed start and goal of a Maze
+// g is the best known cost from the start and rhs a one-step lookahead of it;
+// both survive between calls, so after a few cells change only the states whose
+// g and rhs disagree (the affected region) are expanded again
+public class IncrementalMazeSearch {
+	private static final int[] ROW_MOVES = { 1, -1, 0, 0 };
+	private static final int[] COLUMN_MOVES = { 0, 0, 1, -1 };
+	private final Maze maze;
+	private final int rows, columns;
+	private final int start, goal;
+	private final double[] g;
+	private final double[] rhs;
+	private final KeyedHeap open;
+	private int expansions;
+
+	// A binary min-heap of cell indices ordered by the LPA* key [k1, k2], compared lexicographically
+	private static final class KeyedHeap {
+		private final int[] heap;
+		private final int[] position; // -1 when not in the heap
+		private final double[] key1, key2;
+		private int size;
+
+		KeyedHeap(int capacity) {
+			heap = new int[capacity];
+			position = new int[capacity];
+			key1 = new double[capacity];
+			key2 = new double[capacity];
+			Arrays.fill(position, -1);
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		int peek() {
+			return heap[0];
+		}
+
+		void insert(int id, double k1, double k2) {
+			key1[id] = k1;
+			key2[id] = k2;
+			heap[size] = id;
+			position[id] = size;
+			siftUp(size++);
+		}
+
+		void remove(int id) {
+			int i = position[id];
+			if (i < 0) {
+				return;
+			}
+			position[id] = -1;
+			size--;
+			if (i < size) { // move the last entry into the hole and restore heap order
+				int moved = heap[size];
+				heap[i] = moved;
+				position[moved] = i;
+				siftDown(i);
+				siftUp(position[moved]);
+			}
+		}
+
+		int poll() {
+			int top = heap[0];
+			remove(top);
+			return top;
+		}
+
+		boolean less(int a, int b) {
+			return key1[a] < key1[b] || (key1[a] == key1[b] && key2[a] < key2[b]);
+		}
+
+		private void siftUp(int i) {
+			int id = heap[i];
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (!less(id, heap[parent])) {
+					break;
+				}
+				heap[i] = heap[parent];
+				position[heap[i]] = i;
+				i = parent;
+			}
+			heap[i] = id;
+			position[id] = i;
+		}
+
+		private void siftDown(int i) {
+			int id = heap[i];
+			while (2 * i + 1 < size) {
+				int child = 2 * i + 1;
+				if (child + 1 < size && less(heap[child + 1], heap[child])) {
+					child++;
+				}
+				if (!less(heap[child], id)) {
+					break;
+				}
+				heap[i] = heap[child];
+				position[heap[i]] = i;
+				i = child;
+			}
+			heap[i] = id;
+			position[id] = i;
+		}
+	}
+
+	public IncrementalMazeSearch(Maze maze, MazeLocation start, MazeLocation goal) {
+		this.maze = maze;
+		rows = maze.getRows();
+		columns = maze.getColumns();
+		this.start = start.row * columns + start.column;
+		this.goal = goal.row * columns + goal.column;
+		g = new double[rows * columns];
+		rhs = new double[rows * columns];
+		Arrays.fill(g, Double.POSITIVE_INFINITY);
+		Arrays.fill(rhs, Double.POSITIVE_INFINITY);
+		open = new KeyedHeap(rows * columns);
+		rhs[this.start] = 0;
+		open.insert(this.start, heuristic(this.start), 0);
+	}
+
+	// The current shortest path from start to goal, ready for Maze.mark(), or null
+	// Only repairs what changed since the last call
+	public List<MazeLocation> findPath() {
+		expansions = 0;
+		computeShortestPath();
+		if (g[goal] == Double.POSITIVE_INFINITY) {
+			return null;
+		}
+		// walk back from the goal, always to a neighbor one step closer to the start
+		List<MazeLocation> path = new ArrayList<>();
+		int current = goal;
+		path.add(location(current));
+		while (current != start) {
+			int best = -1;
+			for (int move = 0; move < 4; move++) {
+				int neighbor = neighbor(current, move);
+				if (neighbor >= 0 && isOpen(neighbor) && (best < 0 || g[neighbor] < g[best])) {
+					best = neighbor;
+				}
+			}
+			current = best;
+			path.add(location(current));
+		}
+		Collections.reverse(path);
+		return path;
+	}
+
+	// Tell the search which cells flipped between open and blocked since the last findPath()
+	public void cellsChanged(Collection<MazeLocation> changed) {
+		for (MazeLocation ml : changed) {
+			int cell = ml.row * columns + ml.column;
+			updateVertex(cell);
+			for (int move = 0; move < 4; move++) {
+				int neighbor = neighbor(cell, move);
+				if (neighbor >= 0) {
+					updateVertex(neighbor);
+				}
+			}
+		}
+	}
+
+	// number of cells expanded by the last findPath()
+	public int expansions() {
+		return expansions;
+	}
+
+	private void computeShortestPath() {
+		while (!open.isEmpty() && (topIsBefore(goal) || rhs[goal] != g[goal])) {
+			int u = open.poll();
+			expansions++;
+			if (g[u] > rhs[u]) { // overconsistent, its cost just went down
+				g[u] = rhs[u];
+			} else { // underconsistent, its cost went up; invalidate it and retry
+				g[u] = Double.POSITIVE_INFINITY;
+				updateVertex(u);
+			}
+			for (int move = 0; move < 4; move++) {
+				int neighbor = neighbor(u, move);
+				if (neighbor >= 0) {
+					updateVertex(neighbor);
+				}
+			}
+		}
+	}
+
+	private void updateVertex(int u) {
+		if (u != start) {
+			double best = Double.POSITIVE_INFINITY;
+			if (isOpen(u)) {
+				for (int move = 0; move < 4; move++) {
+					int neighbor = neighbor(u, move);
+					if (neighbor >= 0 && isOpen(neighbor)) {
+						best = Math.min(best, g[neighbor] + 1);
+					}
+				}
+			}
+			rhs[u] = best;
+		}
+		open.remove(u);
+		if (g[u] != rhs[u]) {
+			double k2 = Math.min(g[u], rhs[u]);
+			open.insert(u, k2 + heuristic(u), k2);
+		}
+	}
+
+	// is the smallest key in the open list lexicographically less than the key of *s*?
+	private boolean topIsBefore(int s) {
+		int top = open.peek();
+		double k2 = Math.min(g[s], rhs[s]);
+		double k1 = k2 + heuristic(s);
+		return open.key1[top] < k1 || (open.key1[top] == k1 && open.key2[top] < k2);
+	}
+
+	private double heuristic(int cell) {
+		return Math.abs(cell / columns - goal / columns) + Math.abs(cell % columns - goal % columns);
+	}
+
+	private boolean isOpen(int cell) {
+		return maze.isOpen(cell / columns, cell % columns);
+	}
+
+	// index of the neighbor in direction *move*, or -1 if it is off the grid
+	private int neighbor(int cell, int move) {
+		int row = cell / columns + ROW_MOVES[move];
+		int column = cell % columns + COLUMN_MOVES[move];
+		if (row < 0 || row >= rows || column < 0 || column >= columns) {
+			return -1;
+		}
+		return row * columns + column;
+	}
+
+	private MazeLocation location(int cell) {
+		return new MazeLocation(cell / columns, cell % columns);
+	}
+
+	public static void main(String[] args) {
+		int size = 300;
+		MazeLocation start = new MazeLocation(0, 0);
+		MazeLocation goal = new MazeLocation(size - 1, size - 1);
+		Maze m = new Maze(size, size, start, goal, 0.15);
+		IncrementalMazeSearch search = new IncrementalMazeSearch(m, start, goal);
+		List<MazeLocation> path = search.findPath();
+		if (path == null) {
+			System.out.println("No solution found using LPA*!");
+			return;
+		}
+		System.out.printf("Initial plan: %d steps, %d expansions%n", path.size() - 1, search.expansions());
+
+		for (int round = 1; round <= 3; round++) {
+			// drop a few walls onto the current path
+			List<MazeLocation> changed = new ArrayList<>();
+			for (int i = 1; i <= 3; i++) {
+				MazeLocation ml = path.get(i * path.size() / 4);
+				m.setBlocked(ml, true);
+				changed.add(ml);
+			}
+			long startTime = System.nanoTime();
+			search.cellsChanged(changed);
+			path = search.findPath();
+			long repairTime = (System.nanoTime() - startTime) / 1_000;
+			startTime = System.nanoTime();
+			Node<MazeLocation> fresh = GenericSearch.astar(start, m::goalTest, m::successors, m::manhattanDistance);
+			long astarTime = (System.nanoTime() - startTime) / 1_000;
+			if (path == null || fresh == null) {
+				System.out.println("The goal is no longer reachable!");
+				return;
+			}
+			System.out.printf("Round %d: repaired to %d steps with %d expansions in %d us (fresh A*: %d steps in %d us)%n",
+					round, path.size() - 1, search.expansions(), repairTime,
+					GenericSearch.nodeToPath(fresh).size() - 1, astarTime);
+		}
+	}
+
+}
@@ -0,0 +1,277 @@
+// JumpPointSearch.java
+// From Classic Computer Science Problems in Java Chapter 2
+// Copyright 2020 David Kopec
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package chapter2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+import chapter2.GenericSearch.Node;
+import chapter2.Maze.MazeLocation;
+import chapter2.PrimitiveSearch.EdgeConsumer;
+
+// Jump Point Search: A* on a uniform-cost grid that only expands "jump points",
+// cells where an optimal path may have to turn, instead of every cell on a straight run
+// In diagonal mode moves go to all 8 neighbors (diagonals cost sqrt(2) and may cut corners,
+// as in the original algorithm); otherwise only to the 4 neighbors like Maze.successors()
+// The 4-connected mode prunes little: every jump point tries both turns and every vertical
+// step scans the horizontal runs beside it, so it often does more work than plain A*
+public class JumpPointSearch {
+	private static final double SQRT2 = Math.sqrt(2);
+	private final Maze maze;
+	private final boolean diagonal;
+	private final int columns;
+	private final int goalRow, goalColumn;
+	private final PrimitiveSearch search;
+	private int expansions;
+	private long scanned;
+
+	public JumpPointSearch(Maze maze, boolean diagonal) {
+		this.maze = maze;
+		this.diagonal = diagonal;
+		columns = maze.getColumns();
+		goalRow = maze.getGoal().row;
+		goalColumn = maze.getGoal().column;
+		search = new PrimitiveSearch(maze.getRows() * columns);
+	}
+
+	// Every cell from *start* to the goal, ready for Maze.mark(), or null if there is none
+	// *heuristic* should be manhattanDistance in 4-connected mode and euclideanDistance in diagonal mode
+	public List<MazeLocation> findPath(MazeLocation start, ToDoubleFunction<MazeLocation> heuristic) {
+		expansions = 0;
+		scanned = 0;
+		int[] jumpPoints = search.astar(start.row * columns + start.column,
+				index -> index == goalRow * columns + goalColumn,
+				this::successors,
+				index -> heuristic.applyAsDouble(new MazeLocation(index / columns, index % columns)));
+		return jumpPoints == null ? null : fillIn(jumpPoints);
+	}
+
+	// number of jump points expanded by the last findPath()
+	public int expansions() {
+		return expansions;
+	}
+
+	// number of cells jump() stepped through in the last findPath(), which expansions() leaves out
+	public long scannedCells() {
+		return scanned;
+	}
+
+	private void successors(int index, EdgeConsumer sink) {
+		expansions++;
+		int row = index / columns;
+		int column = index % columns;
+		int parent = search.parentOf(index);
+		if (parent < 0) { // the start has no direction yet, try everything
+			for (int dy = -1; dy <= 1; dy++) {
+				for (int dx = -1; dx <= 1; dx++) {
+					if ((dx != 0 || dy != 0) && (diagonal || dx == 0 || dy == 0)) {
+						tryDirection(row, column, dx, dy, sink);
+					}
+				}
+			}
+			return;
+		}
+		int dx = Integer.signum(column - parent % columns);
+		int dy = Integer.signum(row - parent / columns);
+		if (!diagonal) {
+			// keep going straight or turn either way
+			tryDirection(row, column, dx, dy, sink);
+			tryDirection(row, column, dy, dx, sink);
+			tryDirection(row, column, -dy, -dx, sink);
+		} else if (dx != 0 && dy != 0) { // natural neighbors of a diagonal move
+			tryDirection(row, column, 0, dy, sink);
+			tryDirection(row, column, dx, 0, sink);
+			tryDirection(row, column, dx, dy, sink);
+			// forced neighbors, only reachable optimally through here
+			if (!maze.isOpen(row, column - dx)) {
+				tryDirection(row, column, -dx, dy, sink);
+			}
+			if (!maze.isOpen(row - dy, column)) {
+				tryDirection(row, column, dx, -dy, sink);
+			}
+		} else if (dx != 0) { // horizontal move
+			tryDirection(row, column, dx, 0, sink);
+			if (!maze.isOpen(row + 1, column)) {
+				tryDirection(row, column, dx, 1, sink);
+			}
+			if (!maze.isOpen(row - 1, column)) {
+				tryDirection(row, column, dx, -1, sink);
+			}
+		} else { // vertical move
+			tryDirection(row, column, 0, dy, sink);
+			if (!maze.isOpen(row, column + 1)) {
+				tryDirection(row, column, 1, dy, sink);
+			}
+			if (!maze.isOpen(row, column - 1)) {
+				tryDirection(row, column, -1, dy, sink);
+			}
+		}
+	}
+
+	private void tryDirection(int row, int column, int dx, int dy, EdgeConsumer sink) {
+		int jumpPoint = jump(row + dy, column + dx, dx, dy);
+		if (jumpPoint >= 0) {
+			int rowDistance = Math.abs(jumpPoint / columns - row);
+			int columnDistance = Math.abs(jumpPoint % columns - column);
+			int diagonalSteps = Math.min(rowDistance, columnDistance);
+			sink.accept(jumpPoint, rowDistance + columnDistance - 2 * diagonalSteps + diagonalSteps * SQRT2);
+		}
+	}
+
+	// Walk from (row, column) in direction (dx, dy) until we hit something interesting
+	// Returns the index of the jump point, or -1 if we ran into a wall or off the grid
+	private int jump(int row, int column, int dx, int dy) {
+		while (maze.isOpen(row, column)) {
+			scanned++;
+			if (row == goalRow && column == goalColumn) {
+				return row * columns + column;
+			}
+			if (diagonal) {
+				if (dx != 0 && dy != 0) {
+					if ((maze.isOpen(row + dy, column - dx) && !maze.isOpen(row, column - dx))
+							|| (maze.isOpen(row - dy, column + dx) && !maze.isOpen(row - dy, column))) {
+						return row * columns + column;
+					}
+					// a diagonal step is a jump point if either straight run from it finds one
+					if (jump(row, column + dx, dx, 0) >= 0 || jump(row + dy, column, 0, dy) >= 0) {
+						return row * columns + column;
+					}
+				} else if (dx != 0) {
+					if ((maze.isOpen(row + 1, column + dx) && !maze.isOpen(row + 1, column))
+							|| (maze.isOpen(row - 1, column + dx) && !maze.isOpen(row - 1, column))) {
+						return row * columns + column;
+					}
+				} else {
+					if ((maze.isOpen(row + dy, column + 1) && !maze.isOpen(row, column + 1))
+							|| (maze.isOpen(row + dy, column - 1) && !maze.isOpen(row, column - 1))) {
+						return row * columns + column;
+					}
+				}
+			} else if (dx != 0) {
+				// a cell above or below opens up that was walled off one step back
+				if ((maze.isOpen(row - 1, column) && !maze.isOpen(row - 1, column - dx))
+						|| (maze.isOpen(row + 1, column) && !maze.isOpen(row + 1, column - dx))) {
+					return row * columns + column;
+				}
+			} else {
+				if ((maze.isOpen(row, column - 1) && !maze.isOpen(row - dy, column - 1))
+						|| (maze.isOpen(row, column + 1) && !maze.isOpen(row - dy, column + 1))) {
+					return row * columns + column;
+				}
+				// moving vertically we must turn wherever a horizontal run finds a jump point
+				if (jump(row, column + 1, 1, 0) >= 0 || jump(row, column - 1, -1, 0) >= 0) {
+					return row * columns + column;
+				}
+			}
+			row += dy;
+			column += dx;
+		}
+		return -1;
+	}
+
+	// Jump points are joined by straight or diagonal runs, put back every cell between them
+	private List<MazeLocation> fillIn(int[] jumpPoints) {
+		List<MazeLocation> path = new ArrayList<>();
+		int row = jumpPoints[0] / columns;
+		int column = jumpPoints[0] % columns;
+		path.add(new MazeLocation(row, column));
+		for (int i = 1; i < jumpPoints.length; i++) {
+			int toRow = jumpPoints[i] / columns;
+			int toColumn = jumpPoints[i] % columns;
+			while (row != toRow || column != toColumn) {
+				row += Integer.signum(toRow - row);
+				column += Integer.signum(toColumn - column);
+				path.add(new MazeLocation(row, column));
+			}
+		}
+		return path;
+	}
+
+	public static void main(String[] args) {
+		Maze small = new Maze();
+		List<MazeLocation> smallPath = new JumpPointSearch(small, false)
+				.findPath(new MazeLocation(0, 0), small::manhattanDistance);
+		if (smallPath == null) {
+			System.out.println("No solution found using jump point search!");
+		} else {
+			small.mark(smallPath);
+			System.out.println(small);
+		}
+
+		// compare each mode against GenericSearch.astar on the same graph, a large, sparse maze
+		int size = 1000;
+		MazeLocation start = new MazeLocation(0, 0);
+		Maze m = new Maze(size, size, start, new MazeLocation(size - 1, size - 1), 0.01);
+		if (!compare(m, start, false, m::manhattanDistance)) {
+			System.out.println("No solution found using A*!");
+			return;
+		}
+		MazeLocation goal = m.getGoal();
+		compare(m, start, true, ml -> { // octile distance, exact on an empty 8-connected grid
+			int rowDistance = Math.abs(ml.row - goal.row);
+			int columnDistance = Math.abs(ml.column - goal.column);
+			return Math.max(rowDistance, columnDistance) + (SQRT2 - 1) * Math.min(rowDistance, columnDistance);
+		});
+	}
+
+	// Runs A* over every cell and then JPS over jump points with the same moves, costs and heuristic
+	private static boolean compare(Maze m, MazeLocation start, boolean diagonal,
+			ToDoubleFunction<MazeLocation> heuristic) {
+		String moves = diagonal ? "8-connected" : "4-connected";
+		int[] astarExpansions = new int[1];
+		long startTime = System.nanoTime();
+		Node<MazeLocation> solution = GenericSearch.astar(start, m::goalTest, ml -> {
+			astarExpansions[0]++;
+			return diagonal ? diagonalSuccessors(m, ml) : m.successors(ml);
+		}, heuristic, (from, to) -> from.row != to.row && from.column != to.column ? SQRT2 : 1.0);
+		long astarTime = (System.nanoTime() - startTime) / 1_000_000;
+		if (solution == null) {
+			return false;
+		}
+		System.out.printf("A*  (%s): cost %8.2f, %8d expansions, %5d ms%n",
+				moves, solution.cost, astarExpansions[0], astarTime);
+
+		JumpPointSearch jps = new JumpPointSearch(m, diagonal);
+		startTime = System.nanoTime();
+		List<MazeLocation> path = jps.findPath(start, heuristic);
+		long jpsTime = (System.nanoTime() - startTime) / 1_000_000;
+		double cost = 0;
+		for (int i = 1; i < path.size(); i++) {
+			boolean diagonalStep = path.get(i).row != path.get(i - 1).row
+					&& path.get(i).column != path.get(i - 1).column;
+			cost += diagonalStep ? SQRT2 : 1.0;
+		}
+		System.out.printf("JPS (%s): cost %8.2f, %8d expansions, %5d ms, %8d cells scanned%n",
+				moves, cost, jps.expansions(), jpsTime, jps.scannedCells());
+		return true;
+	}
+
+	// All 8 neighbors, cutting corners the way the diagonal mode of JumpPointSearch does
+	private static List<MazeLocation> diagonalSuccessors(Maze m, MazeLocation ml) {
+		List<MazeLocation> locations = new ArrayList<>();
+		for (int dy = -1; dy <= 1; dy++) {
+			for (int dx = -1; dx <= 1; dx++) {
+				if ((dx != 0 || dy != 0) && m.isOpen(ml.row + dy, ml.column + dx)) {
+					locations.add(new MazeLocation(ml.row + dy, ml.column + dx));
+				}
+			}
+		}
+		return locations;
+	}
+
+}
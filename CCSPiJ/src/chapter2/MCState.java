@@ -175,6 +175,15 @@ public class MCState {
 			List<MCState> path = GenericSearch.nodeToPath(solution);
 			displaySolution(path);
 		}
+		// each crossing takes at most two people east, which makes for an admissible heuristic
+		Node<MCState> solution2 = GenericSearch.idastar(start, MCState::goalTest, MCState::successors,
+				mcs -> (mcs.wm + mcs.wc) / 2.0, (from, to) -> 1.0, 100);
+		if (solution2 == null) {
+			System.out.println("No solution found using IDA*!");
+		} else {
+			List<MCState> path2 = GenericSearch.nodeToPath(solution2);
+			displaySolution(path2);
+		}
 	}
 
 }
@@ -121,6 +121,25 @@ public class Maze {
 		}
 	}
 
+	// accessors for the grid-specific searches in this package
+	int getRows() {
+		return rows;
+	}
+
+	int getColumns() {
+		return columns;
+	}
+
+	MazeLocation getGoal() {
+		return goal;
+	}
+
+	// false for blocked cells and anything outside the grid
+	boolean isOpen(int row, int column) {
+		return row >= 0 && row < rows && column >= 0 && column < columns
+				&& grid[row][column] != Cell.BLOCKED;
+	}
+
 	// return a nicely formatted version of the maze for printing
 	@Override
 	public String toString() {
@@ -171,6 +190,23 @@ public class Maze {
 		grid[goal.row][goal.column] = Cell.GOAL;
 	}
 
+	// copy the open/blocked layout into a CompactMaze with one bit per cell
+	public CompactMaze toCompactMaze() {
+		CompactMaze compact = new CompactMaze(rows, columns, start.row * columns + start.column,
+				goal.row * columns + goal.column);
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				compact.setBlocked(compact.index(row, column), grid[row][column] == Cell.BLOCKED);
+			}
+		}
+		return compact;
+	}
+
+	// open or block a single cell, for mazes that change after they are built
+	public void setBlocked(MazeLocation ml, boolean blocked) {
+		grid[ml.row][ml.column] = blocked ? Cell.BLOCKED : Cell.EMPTY;
+	}
+
 	public double euclideanDistance(MazeLocation ml) {
 		int xdist = ml.column - goal.column;
 		int ydist = ml.row - goal.row;
@@ -216,6 +252,43 @@ public class Maze {
 			System.out.println(m);
 			m.clear(path3);
 		}
+
+		Node<MazeLocation> solution4 = PrimitiveSearch.astar(m.start, m::goalTest, m::successors,
+				m::manhattanDistance, ml -> ml.row * m.columns + ml.column,
+				id -> new MazeLocation(id / m.columns, id % m.columns), m.rows * m.columns);
+		if (solution4 == null) {
+			System.out.println("No solution found using primitive A*!");
+		} else {
+			List<MazeLocation> path4 = GenericSearch.nodeToPath(solution4);
+			m.mark(path4);
+			System.out.println(m);
+			m.clear(path4);
+		}
+
+		// the grid is undirected, so successors double as predecessors
+		Node<MazeLocation> solution5 = GenericSearch.bidirectionalBfs(m.start, m.goal, m::successors,
+				m::successors);
+		if (solution5 == null) {
+			System.out.println("No solution found using bidirectional breadth-first search!");
+		} else {
+			List<MazeLocation> path5 = GenericSearch.nodeToPath(solution5);
+			m.mark(path5);
+			System.out.println(m);
+			m.clear(path5);
+		}
+
+		Node<MazeLocation> solution6 = GenericSearch.bidirectionalAstar(m.start, m.goal, m::successors,
+				m::successors, m::manhattanDistance,
+				ml -> Math.abs(ml.row - m.start.row) + Math.abs(ml.column - m.start.column),
+				(from, to) -> 1.0);
+		if (solution6 == null) {
+			System.out.println("No solution found using bidirectional A*!");
+		} else {
+			List<MazeLocation> path6 = GenericSearch.nodeToPath(solution6);
+			m.mark(path6);
+			System.out.println(m);
+			m.clear(path6);
+		}
 	}
 
 }
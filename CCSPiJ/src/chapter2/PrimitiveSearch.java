@@ -0,0 +1,264 @@
+// PrimitiveSearch.java
+// From Classic Computer Science Problems in Java Chapter 2
+// Copyright 2020 David Kopec
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package chapter2;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+import chapter2.GenericSearch.Node;
+
+// A* over states encoded as ints in [0, capacity)
+// All bookkeeping lives in primitive arrays that are reused between searches,
+// so a search allocates nothing beyond the returned path
+public class PrimitiveSearch {
+
+	// Receives one edge of the state space
+	@FunctionalInterface
+	public interface EdgeConsumer {
+		void accept(int to, double cost);
+	}
+
+	// Pushes every successor of *state* into *sink* instead of building a List
+	@FunctionalInterface
+	public interface IntSuccessors {
+		void forEach(int state, EdgeConsumer sink);
+	}
+
+	// Binary min-heap of state ids keyed by f = g + h
+	// position[] lets us find an id in the heap, which gives us decrease-key
+	static final class IndexedMinHeap {
+		private final int[] heap;
+		private final int[] position; // -1 when not in the heap
+		private final double[] key;
+		private int size;
+
+		IndexedMinHeap(int capacity) {
+			heap = new int[capacity];
+			position = new int[capacity];
+			key = new double[capacity];
+			Arrays.fill(position, -1);
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		int size() {
+			return size;
+		}
+
+		boolean contains(int id) {
+			return position[id] >= 0;
+		}
+
+		// insert *id* or lower its key if it is already present
+		void offer(int id, double priority) {
+			if (position[id] < 0) {
+				heap[size] = id;
+				position[id] = size;
+				key[id] = priority;
+				siftUp(size++);
+			} else if (priority < key[id]) {
+				key[id] = priority;
+				siftUp(position[id]);
+			}
+		}
+
+		int poll() {
+			int top = heap[0];
+			position[top] = -1;
+			size--;
+			if (size > 0) {
+				heap[0] = heap[size];
+				position[heap[0]] = 0;
+				siftDown(0);
+			}
+			return top;
+		}
+
+		// only touches the slots that are occupied, so it is cheap after a small search
+		void clear() {
+			for (int i = 0; i < size; i++) {
+				position[heap[i]] = -1;
+			}
+			size = 0;
+		}
+
+		private void siftUp(int i) {
+			int id = heap[i];
+			double k = key[id];
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				int parentId = heap[parent];
+				if (key[parentId] <= k) {
+					break;
+				}
+				heap[i] = parentId;
+				position[parentId] = i;
+				i = parent;
+			}
+			heap[i] = id;
+			position[id] = i;
+		}
+
+		private void siftDown(int i) {
+			int id = heap[i];
+			double k = key[id];
+			int half = size >>> 1;
+			while (i < half) {
+				int child = 2 * i + 1;
+				int right = child + 1;
+				if (right < size && key[heap[right]] < key[heap[child]]) {
+					child = right;
+				}
+				if (k <= key[heap[child]]) {
+					break;
+				}
+				heap[i] = heap[child];
+				position[heap[i]] = i;
+				i = child;
+			}
+			heap[i] = id;
+			position[id] = i;
+		}
+	}
+
+	private final int capacity;
+	private final IndexedMinHeap frontier;
+	private final double[] cost; // g value of every reached state
+	private final int[] parent; // -1 for the initial state
+	// a state's arrays are only valid if its stamp matches the current search
+	private final int[] stamp;
+	private int generation;
+	// per-search state read by relax(), kept in fields so the sink never allocates
+	private final EdgeConsumer relax = this::relax;
+	private IntToDoubleFunction heuristic;
+	private int current;
+
+	public PrimitiveSearch(int capacity) {
+		this.capacity = capacity;
+		frontier = new IndexedMinHeap(capacity);
+		cost = new double[capacity];
+		parent = new int[capacity];
+		stamp = new int[capacity];
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	// The state *state* was reached from in the current or last search, -1 for the initial state
+	// Lets successor functions that care about direction (such as JumpPointSearch) see their parent
+	int parentOf(int state) {
+		return parent[state];
+	}
+
+	// Returns the path from *initial* to a goal as state ids, or null
+	public int[] astar(int initial, IntPredicate goalTest, IntSuccessors successors,
+			IntToDoubleFunction heuristic) {
+		reset();
+		this.heuristic = heuristic;
+		touch(initial, 0.0, -1);
+		frontier.offer(initial, heuristic.applyAsDouble(initial));
+		// keep going while there is more to explore
+		while (!frontier.isEmpty()) {
+			current = frontier.poll();
+			// if we found the goal, we're done
+			if (goalTest.test(current)) {
+				this.heuristic = null;
+				return pathTo(current);
+			}
+			successors.forEach(current, relax);
+		}
+		this.heuristic = null;
+		return null; // went through everything and never found goal
+	}
+
+	private void relax(int child, double edgeCost) {
+		double newCost = cost[current] + edgeCost;
+		if (stamp[child] != generation) {
+			touch(child, newCost, current);
+			frontier.offer(child, newCost + heuristic.applyAsDouble(child));
+		} else if (newCost < cost[child]) { // cheaper route, (re)open child
+			// h(child) is recovered from its last key instead of calling the heuristic again
+			double h = frontier.key[child] - cost[child];
+			cost[child] = newCost;
+			parent[child] = current;
+			frontier.offer(child, newCost + h);
+		}
+	}
+
+	private void touch(int state, double g, int from) {
+		stamp[state] = generation;
+		cost[state] = g;
+		parent[state] = from;
+	}
+
+	private void reset() {
+		frontier.clear();
+		if (++generation == 0) { // wrapped around, stale stamps could collide
+			Arrays.fill(stamp, 0);
+			generation = 1;
+		}
+	}
+
+	private int[] pathTo(int goal) {
+		int length = 0;
+		for (int s = goal; s != -1; s = parent[s]) {
+			length++;
+		}
+		int[] path = new int[length];
+		for (int s = goal; s != -1; s = parent[s]) {
+			path[--length] = s;
+		}
+		return path;
+	}
+
+	// Adapter for the same entry points as GenericSearch.astar
+	// *encode* must map every reachable state into [0, capacity) and *decode* must invert it
+	public static <T> Node<T> astar(T initial, Predicate<T> goalTest,
+			Function<T, List<T>> successors, ToDoubleFunction<T> heuristic,
+			ToIntFunction<T> encode, IntFunction<T> decode, int capacity) {
+		PrimitiveSearch search = new PrimitiveSearch(capacity);
+		int[] path = search.astar(encode.applyAsInt(initial),
+				id -> goalTest.test(decode.apply(id)),
+				(id, sink) -> {
+					// 1 here assumes a grid, just like GenericSearch.astar
+					for (T child : successors.apply(decode.apply(id))) {
+						sink.accept(encode.applyAsInt(child), 1.0);
+					}
+				},
+				id -> heuristic.applyAsDouble(decode.apply(id)));
+		if (path == null) {
+			return null;
+		}
+		// rebuild a Node chain that GenericSearch.nodeToPath() understands
+		Node<T> node = null;
+		for (int id : path) {
+			node = new Node<>(decode.apply(id), node, search.cost[id], 0.0);
+		}
+		return node;
+	}
+
+}
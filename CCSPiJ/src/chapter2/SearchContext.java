@@ -0,0 +1,160 @@
+// SearchContext.java
+// From Classic Computer Science Problems in Java Chapter 2
+// Copyright 2020 David Kopec
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package chapter2;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import chapter2.GenericSearch.AddressableQueue;
+import chapter2.GenericSearch.Node;
+
+// The frontier and explored structures of GenericSearch.dfs(), bfs() and astar(),
+// kept around so that running many searches doesn't allocate them again every time
+// A context is not thread-safe and runs one search at a time; keep one per thread,
+// for example with forCurrentThread() or a ThreadLocal of your own
+// Only an indexed context resets its explored set in O(1); the default one empties
+// a HashMap, which costs time in proportion to the largest search it has ever held
+// After a search the default context lets go of its Nodes, but an indexed one keeps
+// them in its array until later searches overwrite them
+public final class SearchContext<T> {
+	private static final ThreadLocal<SearchContext<?>> PER_THREAD = ThreadLocal.withInitial(SearchContext::new);
+	// dfs uses it as a stack and bfs as a queue
+	final ArrayDeque<Node<T>> deque = new ArrayDeque<>();
+	final AddressableQueue<T> queue = new AddressableQueue<>();
+	// states are looked up in a hash map unless the context was given an *index*
+	private final Map<T, Node<T>> explored;
+	private final ToIntFunction<T> index;
+	private final Node<T>[] nodes;
+	// a slot of nodes is only valid if its stamp matches the current generation,
+	// which makes clearing the explored set between searches O(1)
+	private final int[] stamp;
+	private int generation;
+	private boolean inUse;
+	SearchStats stats; // null unless someone wants instrumentation
+
+	public SearchContext() {
+		explored = new HashMap<>();
+		index = null;
+		nodes = null;
+		stamp = null;
+	}
+
+	// For states that map onto [0, capacity) through *index*, explored becomes an array
+	@SuppressWarnings("unchecked")
+	public SearchContext(ToIntFunction<T> index, int capacity) {
+		explored = null;
+		this.index = index;
+		nodes = (Node<T>[]) new Node<?>[capacity];
+		stamp = new int[capacity];
+	}
+
+	// A hash-based context reserved for the calling thread
+	@SuppressWarnings("unchecked")
+	public static <T> SearchContext<T> forCurrentThread() {
+		return (SearchContext<T>) PER_THREAD.get();
+	}
+
+	// Record what every search run on this context does into *stats*, or stop with null
+	public void setStats(SearchStats stats) {
+		this.stats = stats;
+	}
+
+	public SearchStats getStats() {
+		return stats;
+	}
+
+	// Called at the start of every search; throws if a search is already using this context
+	// (for example a successor function that runs another search on the same context)
+	void begin() {
+		if (inUse) {
+			throw new IllegalStateException("SearchContext is already in use by another search");
+		}
+		inUse = true;
+		if (stats != null) {
+			stats.startSearch();
+		}
+		if (explored == null && ++generation == 0) { // wrapped around, old stamps could collide
+			Arrays.fill(stamp, 0);
+			generation = 1;
+		}
+	}
+
+	// Drops the references to this search's Nodes, so that a context kept for the
+	// life of a pooled thread doesn't also keep its last search graph alive
+	void end() {
+		inUse = false;
+		deque.clear();
+		queue.clear();
+		if (explored != null) {
+			explored.clear();
+		}
+	}
+
+	// The Node that *state* was last reached with in this search, or null
+	Node<T> reached(T state) {
+		if (explored != null) {
+			return explored.get(state);
+		}
+		int i = index.applyAsInt(state);
+		return stamp[i] == generation ? nodes[i] : null;
+	}
+
+	void reach(T state, Node<T> node) {
+		if (explored != null) {
+			explored.put(state, node);
+		} else {
+			int i = index.applyAsInt(state);
+			stamp[i] = generation;
+			nodes[i] = node;
+		}
+	}
+
+	public static void main(String[] args) {
+		Maze m = new Maze(50, 50, new Maze.MazeLocation(0, 0), new Maze.MazeLocation(49, 49), 0.2);
+		Maze.MazeLocation start = new Maze.MazeLocation(0, 0);
+		int searches = 5_000;
+		// a context that indexes MazeLocations by their position in the grid
+		SearchContext<Maze.MazeLocation> context = new SearchContext<>(ml -> ml.row * 50 + ml.column, 50 * 50);
+		for (int round = 0; round < 2; round++) { // the first round warms up the JIT
+			long startTime = System.nanoTime();
+			for (int i = 0; i < searches; i++) {
+				GenericSearch.bfs(start, m::goalTest, m::successors);
+			}
+			long freshTime = (System.nanoTime() - startTime) / 1_000_000;
+			startTime = System.nanoTime();
+			for (int i = 0; i < searches; i++) {
+				GenericSearch.bfs(start, m::goalTest, m::successors, context);
+			}
+			long reusedTime = (System.nanoTime() - startTime) / 1_000_000;
+			System.out.printf("%d searches: %d ms with fresh structures, %d ms with a reused context%n",
+					searches, freshTime, reusedTime);
+		}
+
+		// the same context can report what a search did
+		SearchStats stats = new SearchStats();
+		context.setStats(stats);
+		GenericSearch.bfs(start, m::goalTest, m::successors, context);
+		System.out.println("bfs:   " + stats);
+		stats.reset();
+		GenericSearch.astar(start, m::goalTest, m::successors, m::manhattanDistance, (from, to) -> 1.0, context);
+		System.out.println("astar: " + stats);
+	}
+
+}
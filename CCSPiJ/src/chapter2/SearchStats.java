@@ -0,0 +1,125 @@
+// SearchStats.java
+// From Classic Computer Science Problems in Java Chapter 2
+// Copyright 2020 David Kopec
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package chapter2;
+
+// Counters filled in by GenericSearch.dfs(), bfs() and astar() when attached to
+// their SearchContext with setStats(); without one the searches skip all of this
+// Counts and times add up over every search until reset(), peaks are the largest seen
+// Queue time is only measured for astar, whose frontier is a heap; a push onto the
+// ArrayDeque of dfs and bfs costs less than reading the clock would
+public final class SearchStats {
+	private long searches;
+	private long generated;
+	private long expanded;
+	private long duplicates;
+	private int frontierPeak;
+	private int exploredPeak;
+	private int currentExplored;
+	private long successorNanos;
+	private long heuristicNanos;
+	private long queueNanos;
+
+	public void reset() {
+		searches = generated = expanded = duplicates = 0;
+		frontierPeak = exploredPeak = currentExplored = 0;
+		successorNanos = heuristicNanos = queueNanos = 0;
+	}
+
+	void startSearch() {
+		searches++;
+		currentExplored = 0;
+	}
+
+	void expanded(int children, long nanos) {
+		expanded++;
+		generated += children;
+		successorNanos += nanos;
+	}
+
+	void duplicate() {
+		duplicates++;
+	}
+
+	void explored() {
+		if (++currentExplored > exploredPeak) {
+			exploredPeak = currentExplored;
+		}
+	}
+
+	void frontier(int size) {
+		if (size > frontierPeak) {
+			frontierPeak = size;
+		}
+	}
+
+	void heuristic(long nanos) {
+		heuristicNanos += nanos;
+	}
+
+	void queue(long nanos) {
+		queueNanos += nanos;
+	}
+
+	public long searches() {
+		return searches;
+	}
+
+	// children returned by the successor function
+	public long nodesGenerated() {
+		return generated;
+	}
+
+	// states whose successors were asked for
+	public long nodesExpanded() {
+		return expanded;
+	}
+
+	// children that were skipped because they had already been reached at least as cheaply
+	public long duplicateHits() {
+		return duplicates;
+	}
+
+	public int peakFrontierSize() {
+		return frontierPeak;
+	}
+
+	public int peakExploredSize() {
+		return exploredPeak;
+	}
+
+	public long successorNanos() {
+		return successorNanos;
+	}
+
+	public long heuristicNanos() {
+		return heuristicNanos;
+	}
+
+	public long queueNanos() {
+		return queueNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d searches: %d generated, %d expanded, %d duplicate hits, "
+				+ "peak frontier %d, peak explored %d, "
+				+ "%.3f ms in successors, %.3f ms in heuristic, %.3f ms in queue",
+				searches, generated, expanded, duplicates, frontierPeak, exploredPeak,
+				successorNanos / 1e6, heuristicNanos / 1e6, queueNanos / 1e6);
+	}
+
+}
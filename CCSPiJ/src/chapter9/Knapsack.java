@@ -19,6 +19,8 @@ package chapter9;
 import java.util.ArrayList;
 import java.util.List;
 
+import chapter1.Memoizer;
+
 public final class Knapsack {
 
 	public static final class Item {
@@ -34,27 +36,33 @@ public final class Knapsack {
 	}
 
 	public static List<Item> knapsack(List<Item> items, int maxCapacity) {
-		// build up dynamic programming table
-		double[][] table = new double[items.size() + 1][maxCapacity + 1];
-		for (int i = 0; i < items.size(); i++) {
-			Item item = items.get(i);
-			for (int capacity = 1; capacity <= maxCapacity; capacity++) {
-				double prevItemValue = table[i][capacity];
-				if (capacity >= item.weight) { // item fits in knapsack
-					double valueFreeingWeightForItem = table[i][capacity - item.weight];
-					// only take if more valuable than previous item
-					table[i + 1][capacity] = Math.max(valueFreeingWeightForItem + item.value, prevItemValue);
-				} else { // no room for this item
-					table[i + 1][capacity] = prevItemValue;
-				}
+		// best value using only the first i items with *capacity* to spare,
+		// memoized on the key i * (maxCapacity + 1) + capacity, which is just
+		// where it would sit in a dynamic programming table
+		int columns = maxCapacity + 1;
+		Memoizer.OfLong<Double> best = new Memoizer.OfLong<>((self, key) -> {
+			int i = (int) (key / columns);
+			int capacity = (int) (key % columns);
+			if (i == 0 || capacity == 0) {
+				return 0.0;
 			}
-		}
-		// figure out solution from table
+			Item item = items.get(i - 1);
+			double prevItemValue = self.apply(key - columns);
+			if (capacity >= item.weight) { // item fits in knapsack
+				double valueFreeingWeightForItem = self.apply(key - columns - item.weight);
+				// only take if more valuable than previous item
+				return Math.max(valueFreeingWeightForItem + item.value, prevItemValue);
+			}
+			return prevItemValue; // no room for this item
+		}, (long) (items.size() + 1) * columns);
+		// figure out solution from the memoized values
 		List<Item> solution = new ArrayList<>();
 		int capacity = maxCapacity;
 		for (int i = items.size(); i > 0; i--) { // work backwards
 			// was this item used?
-			if (table[i - 1][capacity] != table[i][capacity]) {
+			double withItem = best.apply((long) i * columns + capacity);
+			double withoutItem = best.apply((long) (i - 1) * columns + capacity);
+			if (withoutItem != withItem) {
 				solution.add(items.get(i - 1));
 				// if the item was used, remove its weight
 				capacity -= items.get(i - 1).weight;